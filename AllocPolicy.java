@@ -0,0 +1,51 @@
+/**
+ * An allocation policy decides which free extent the pages for an initiate or
+ * grow request are taken from. MemSim keeps asking the policy for an extent and
+ * takes pages off its front until the request is satisfied, so a request may
+ * still be spread over several extents.
+ *
+ * The policy is chosen once per run with the -policy option (first, next, best
+ * or worst), which makes it possible to compare fragmentation and throughput
+ * of the policies on the same trace.
+ */
+public interface AllocPolicy {
+
+    /**
+     * Picks the free extent that the next pages should come from.
+     *
+     * @param freePages FreePageIndex, never empty
+     * @param numPages  Integer, pages still needed by the request
+     * @return Integer node of 'freePages'
+     */
+    int choose(FreePageIndex freePages, int numPages);
+
+    /**
+     * Told about every run of pages taken off a chosen extent.
+     *
+     * @param start    Integer
+     * @param numPages Integer
+     */
+    default void allocated(int start, int numPages) {
+    }
+
+    /**
+     * Gets the policy called 'name'.
+     *
+     * @param name String, one of first, next, best or worst
+     * @return AllocPolicy
+     */
+    static AllocPolicy forName(String name) {
+        switch (name) {
+            case "first":
+                return new FirstFit();
+            case "next":
+                return new NextFit();
+            case "best":
+                return new BestFit();
+            case "worst":
+                return new WorstFit();
+            default:
+                throw new IllegalArgumentException("Unknown allocation policy: " + name);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). Resident pages seen once
+ * recently are in T1, pages seen at least twice in T2, both in LRU order.
+ * Pages evicted from T1 and T2 are remembered in the ghost lists B1 and B2.
+ * A fault on a ghost in B1 means T1 should have been larger, one in B2 that
+ * T2 should have, and the target size 'p' of T1 moves that way; evictions
+ * then come from T1 while it is larger than 'p' and from T2 otherwise.
+ *
+ * Together the four lists remember at most twice as many pages as there
+ * are frames, and T1 with B1 at most as many as there are frames.
+ */
+public class ArcReplacement implements ReplacementPolicy {
+
+    // Lists of frames
+    private static final int FREE = 0;
+    private static final int T1 = 1;
+    private static final int T2 = 2;
+
+    // Lists of ghosts
+    private static final int GHOST_FREE = 0;
+    private static final int B1 = 1;
+    private static final int B2 = 2;
+
+    private final int c;
+    private int p;
+
+    private final FrameLists frames;
+    private final long frameKey[];
+
+    private final FrameLists ghosts;
+    private final long ghostKey[];
+    private final PageKeyTable ghostOf;
+
+    public ArcReplacement(int numFrames) {
+        c = numFrames;
+        frames = FrameLists.allIn(numFrames, 3, FREE);
+        frameKey = new long[numFrames];
+        ghosts = FrameLists.allIn(numFrames, 3, GHOST_FREE);
+        ghostKey = new long[numFrames];
+        ghostOf = new PageKeyTable(numFrames);
+    }
+
+    public void hit(int frame) {
+        frames.moveToFront(T2, frame);
+    }
+
+    public int fault(long key) {
+        int ghost = ghostOf.get(key);
+        int frame;
+        if (ghost != PageKeyTable.NULL && ghosts.listOf(ghost) == B1) {
+            // T1 was too small
+            p = Math.min(c, p + Math.max(1, ghosts.size(B2) / ghosts.size(B1)));
+            forget(ghost);
+            frame = replace(false);
+            frames.moveToFront(T2, frame);
+        } else if (ghost != PageKeyTable.NULL) {
+            // T2 was too small
+            p = Math.max(0, p - Math.max(1, ghosts.size(B1) / ghosts.size(B2)));
+            forget(ghost);
+            frame = replace(true);
+            frames.moveToFront(T2, frame);
+        } else {
+            int l1 = frames.size(T1) + ghosts.size(B1);
+            int all = l1 + frames.size(T2) + ghosts.size(B2);
+            if (l1 >= c && frames.size(T1) == c) {
+                // T1 fills every frame, its oldest page is dropped unremembered
+                frame = frames.last(T1);
+            } else {
+                if (l1 >= c) {
+                    forget(ghosts.last(B1));
+                } else if (all >= 2 * c && !ghosts.isEmpty(B2)) {
+                    forget(ghosts.last(B2));
+                }
+                frame = replace(false);
+            }
+            frames.moveToFront(T1, frame);
+        }
+        frameKey[frame] = key;
+        return frame;
+    }
+
+    public void release(int frame) {
+        frames.moveToFront(FREE, frame);
+    }
+
+    /**
+     * Gets a frame for a faulting page: a free one, or the frame of the
+     * page evicted from T1 or T2, which is remembered in B1 or B2.
+     *
+     * @param inB2 boolean, whether the faulting page was in B2
+     * @return Integer frame, in no list
+     */
+    private int replace(boolean inB2) {
+        int frame;
+        int t1 = frames.size(T1);
+        if (!frames.isEmpty(FREE)) {
+            frame = frames.first(FREE);
+        } else if (t1 > 0 && (t1 > p || (inB2 && t1 == p) || frames.isEmpty(T2))) {
+            frame = frames.last(T1);
+            remember(B1, frameKey[frame]);
+        } else {
+            frame = frames.last(T2);
+            remember(B2, frameKey[frame]);
+        }
+        frames.remove(frame);
+        return frame;
+    }
+
+    /**
+     * Adds 'key' to the front of ghost list 'list'. When every ghost is in
+     * use, the oldest one of B2, or else of B1, is forgotten first.
+     *
+     * @param list Integer
+     * @param key  Long
+     */
+    private void remember(int list, long key) {
+        if (ghosts.isEmpty(GHOST_FREE)) {
+            forget(ghosts.last(ghosts.isEmpty(B2) ? B1 : B2));
+        }
+        int ghost = ghosts.first(GHOST_FREE);
+        ghostKey[ghost] = key;
+        ghostOf.put(key, ghost);
+        ghosts.moveToFront(list, ghost);
+    }
+
+    private void forget(int ghost) {
+        ghostOf.remove(ghostKey[ghost]);
+        ghosts.moveToFront(GHOST_FREE, ghost);
+    }
+}
@@ -0,0 +1,264 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free page pool that keeps one bit per page, 1 when the page is free.
+ *
+ * A thread claims a run of free pages inside one word of the bitmap with a
+ * single compare-and-set that clears the run's bits, and gives pages back
+ * with an atomic OR, so no thread ever waits for a lock. The words are read
+ * and written through a VarHandle, which unlike AtomicLongArray offers the
+ * OR as one atomic instruction instead of a compare-and-set loop.
+ *
+ * Like ShardedPagePool, an atomic counter of free pages is lowered before a
+ * request looks for its pages and raised after freed bits are set, so a
+ * request that got its pages reserved always finds them. Each thread starts
+ * looking where it found pages last time, so threads spread over the bitmap
+ * instead of all fighting over its first free words.
+ */
+public class AtomicBitmapPool implements ConcurrentPagePool {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long bits[];
+    private final int numPages;
+    private final AtomicInteger freePages;
+
+    // Word each thread looks at first
+    private final ThreadLocal<int[]> cursor;
+    private final AtomicInteger nextCursor = new AtomicInteger();
+
+    /**
+     * Creates a pool where the pages 0 through numPages - 1 are free.
+     *
+     * @param numPages Integer
+     */
+    public AtomicBitmapPool(int numPages) {
+        this.numPages = numPages;
+        this.bits = new long[(int) ((numPages + 63L) >>> 6)];
+        for (int w = 0; w < bits.length; w++) {
+            bits[w] = -1L;
+        }
+        int tail = numPages & 63;
+        if (tail != 0) {
+            bits[bits.length - 1] = (1L << tail) - 1;
+        }
+        freePages = new AtomicInteger(numPages);
+
+        // Threads start at words spread evenly over the bitmap
+        cursor = ThreadLocal.withInitial(() -> new int[] {
+            (int) (((nextCursor.getAndIncrement() * 0x9E3779B9L) & 0xFFFFFFFFL) * bits.length >>> 32)
+        });
+    }
+
+    public int getFreePages() {
+        return freePages.get();
+    }
+
+    /**
+     * Counts the runs of free pages, by counting every free page whose
+     * previous page is not free.
+     *
+     * @return Integer
+     */
+    public int getExtentCount() {
+        int count = 0;
+        long carry = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = (long) WORDS.getVolatile(bits, w);
+            count += Long.bitCount(word & ~((word << 1) | carry));
+            carry = word >>> 63;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the longest run of free pages, by reading every word once.
+     *
+     * @return Integer
+     */
+    public int getLargestExtent() {
+        int largest = 0;
+        int run = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = (long) WORDS.getVolatile(bits, w);
+            if (word == -1L) {
+                run += 64;
+                continue;
+            }
+            // Free pages at the bottom of the word continue the current run
+            run += Long.numberOfTrailingZeros(~word);
+            largest = Math.max(largest, run);
+
+            // Runs inside the word, then the one that reaches its top
+            long rest = word;
+            while (rest != 0) {
+                int lo = Long.numberOfTrailingZeros(rest);
+                int len = Long.numberOfTrailingZeros(~(rest >>> lo));
+                if (lo + len >= 64) {
+                    break;
+                }
+                largest = Math.max(largest, len);
+                rest &= -1L << (lo + len);
+            }
+            run = rest == 0 ? 0 : 64 - Long.numberOfTrailingZeros(rest);
+        }
+        return Math.max(largest, run);
+    }
+
+    /**
+     * Checks whether 'page' is free.
+     *
+     * @param page Integer
+     * @return boolean
+     */
+    public boolean isFree(int page) {
+        return (((long) WORDS.getVolatile(bits, page >>> 6) >>> (page & 63)) & 1) != 0;
+    }
+
+    public boolean tryAllocate(int numPages, List<PageUsage> dest) {
+        while (true) {
+            int free = freePages.get();
+            if (free < numPages) {
+                return false;
+            }
+            if (freePages.compareAndSet(free, free - numPages)) {
+                claim(numPages, dest);
+                return true;
+            }
+        }
+    }
+
+    public int allocate(int numPages, List<PageUsage> dest) {
+        while (true) {
+            int free = freePages.get();
+            int take = Math.min(free, numPages);
+            if (freePages.compareAndSet(free, free - take)) {
+                claim(take, dest);
+                return take;
+            }
+        }
+    }
+
+    public void free(int start, int end) {
+        int w = start >>> 6;
+        int last = end >>> 6;
+        for (; w <= last; w++) {
+            int lo = w == start >>> 6 ? start & 63 : 0;
+            int hi = w == last ? end & 63 : 63;
+            WORDS.getAndBitwiseOr(bits, w, rangeMask(lo, hi));
+        }
+        freePages.addAndGet(end - start + 1);
+    }
+
+    /**
+     * Takes every page out of the pool. Other threads must not use the pool
+     * meanwhile.
+     */
+    public void removeAll() {
+        for (int w = 0; w < bits.length; w++) {
+            WORDS.setVolatile(bits, w, 0L);
+        }
+        freePages.set(0);
+    }
+
+    /**
+     * Adds every free extent to the end of 'dest', in ascending order. Pages
+     * that are claimed or freed while the bitmap is read may or may not be
+     * seen.
+     *
+     * @param dest List<PageUsage>
+     */
+    public void copyFreeExtents(List<PageUsage> dest) {
+        int runStart = -1;
+        for (int w = 0; w < bits.length; w++) {
+            long word = (long) WORDS.getVolatile(bits, w);
+            int base = w << 6;
+            int bit = 0;
+            while (bit < 64) {
+                if (runStart < 0) {
+                    long rest = word >>> bit;
+                    if (rest == 0) {
+                        break;
+                    }
+                    bit += Long.numberOfTrailingZeros(rest);
+                    runStart = base + bit;
+                } else {
+                    long rest = ~word >>> bit;
+                    if (rest == 0) {
+                        break;
+                    }
+                    bit += Long.numberOfTrailingZeros(rest);
+                    dest.add(dest.size() + 1, runStart, base + bit - 1);
+                    runStart = -1;
+                }
+            }
+        }
+        if (runStart >= 0) {
+            dest.add(dest.size() + 1, runStart, numPages - 1);
+        }
+    }
+
+    /**
+     * Clears the bits of 'numPages' free pages, which have already been
+     * reserved on the free counter, and adds them to 'dest'. Each
+     * compare-and-set takes the lowest run of free bits in a word, up to
+     * the pages still needed; runs that continue in the next word are
+     * joined before they are added.
+     *
+     * @param numPages Integer
+     * @param dest     List<PageUsage>
+     */
+    private void claim(int numPages, List<PageUsage> dest) {
+        if (numPages == 0) {
+            return;
+        }
+        int position[] = cursor.get();
+        int w = position[0];
+        int need = numPages;
+        int runStart = -1;
+        int runEnd = -1;
+
+        while (need > 0) {
+            long word = (long) WORDS.getVolatile(bits, w);
+            if (word == 0) {
+                w = w + 1 == bits.length ? 0 : w + 1;
+                continue;
+            }
+
+            int lo = Long.numberOfTrailingZeros(word);
+            int len = Math.min(Long.numberOfTrailingZeros(~(word >>> lo)), 64 - lo);
+            len = Math.min(len, need);
+            long mask = len == 64 ? -1L : ((1L << len) - 1) << lo;
+
+            if (WORDS.compareAndSet(bits, w, word, word & ~mask)) {
+                int first = (w << 6) + lo;
+                if (first == runEnd + 1 && runStart >= 0) {
+                    runEnd += len;
+                } else {
+                    if (runStart >= 0) {
+                        MemSim.putInOrder(runStart, runEnd, dest);
+                    }
+                    runStart = first;
+                    runEnd = first + len - 1;
+                }
+                need -= len;
+            }
+        }
+        MemSim.putInOrder(runStart, runEnd, dest);
+        position[0] = w;
+    }
+
+    /**
+     * Gets a word with bits 'lo' through 'hi' set.
+     *
+     * @param lo Integer
+     * @param hi Integer
+     * @return Long
+     */
+    private static long rangeMask(int lo, int hi) {
+        long upTo = hi == 63 ? -1L : (1L << (hi + 1)) - 1;
+        return upTo & (-1L << lo);
+    }
+}
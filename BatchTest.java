@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class BatchTest {
+    // This class is meant to test MemSim.executeBatch. The same random
+// commands are run on two simulators, one command at a time on the first
+// and in batches of random length on the second, and it prints whether
+// any outcome was reported a different number of times (the pages listed
+// by 'p' aside, which may differ), or the counts of free and occupied
+// pages, bytes or programs differ at the end. It also runs batches with
+// a journal, recovers a third simulator from it, and prints whether its
+// snapshot is the same as the one of the simulator that ran them.
+
+        public static void main(String args[]) throws IOException {
+            testBatch("extent", "extent", 0, 0);
+            testBatch("bitmap", "bitmap", 0, 0);
+            testBatch("extent with frames", "extent", 64, 0);
+            testBatch("buddy (one at a time)", "buddy", 0, 0);
+            testBatch("huge (one at a time)", "extent", 0, 16);
+            testRecovery("recovery", "extent", 0);
+            testRecovery("recovery, compactAt 20", "extent", 20);
+            testRecovery("recovery, bitmap", "bitmap", 20);
+        }
+
+        // Runs batches with a journal and checkpoints, recovers from them
+        // and compares the snapshots of both simulators
+        // @param name      The name to print for the test
+        // @param pool      The -pool name
+        // @param compactAt The -compactAt count
+        public static void testRecovery(String name, String pool, int compactAt) throws IOException {
+            Path dir = Files.createTempDirectory("batchtest");
+            MemParam params = new MemParam();
+            params.numPages = 4096;
+            params.numPrograms = 64;
+            params.maxSize = 40000;
+            params.pageSize = 100;
+            params.pool = pool;
+            params.compactAt = compactAt;
+            params.compactBudget = 64;
+            params.output = "quiet";
+            params.snapshotDir = dir.resolve("snapshots").toString();
+            Files.createDirectories(dir.resolve("snapshots"));
+            MemSim batched = new MemSim(params);
+            batched.startJournal(dir.resolve("journal"), 37);
+
+            Random random = new Random(6174);
+            CommandArray batch = new CommandArray();
+            for (int op = 0; op < 50000; op++) {
+                char opcode = "iitggssspc".charAt(random.nextInt(10));
+                if (opcode == 'c' && random.nextInt(100) != 0) {
+                    continue;
+                }
+                batch.add(opcode, random.nextInt(80), random.nextInt(opcode == 'i' ? 40000 : 4000));
+                if (random.nextInt(300) == 0) {
+                    batched.executeBatch(batch);
+                    batch.clear();
+                }
+            }
+            batched.executeBatch(batch);
+            batched.closeJournal();
+
+            MemSim recovered = new MemSim(params);
+            recovered.recover(dir.resolve("journal"));
+            batched.saveSnapshot(dir.resolve("a.msnap"));
+            recovered.saveSnapshot(dir.resolve("b.msnap"));
+            boolean same = state(dir.resolve("a.msnap")).equals(state(dir.resolve("b.msnap")));
+            System.out.printf("%-22s %s, %d pages moved, %d free pages%n", name + ":",
+                    same ? "OK" : "FAILED: recovered state differs", batched.getPagesMoved(),
+                    recovered.getFreePageCount());
+        }
+
+        // Reads a snapshot into a string, with the programs in the order of
+        // their IDs, since the slots they were saved from may differ
+        // @param path The snapshot file
+        public static String state(Path path) throws IOException {
+            ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+            file.position(24);
+            StringBuilder state = new StringBuilder("operations " + file.getLong());
+            state.append(", occupied ").append(file.getInt()).append(", bytes ").append(file.getLong());
+            int extents = file.getInt();
+            int count = file.getInt();
+            state.append(", free");
+            for (int i = 0; i < extents; i++)
+                state.append(" ").append(file.getInt()).append("-").append(file.getInt());
+            TreeMap<Integer, String> progs = new TreeMap<Integer, String>();
+            for (int p = 0; p < count; p++) {
+                int id = file.getInt();
+                StringBuilder prog = new StringBuilder(file.getInt() + " bytes");
+                int runs = file.getInt() + file.getInt();
+                for (int i = 0; i < runs; i++)
+                    prog.append(" ").append(file.getInt()).append("-").append(file.getInt());
+                progs.put(id, prog.toString());
+            }
+            return state.append(", programs ").append(progs).toString();
+        }
+
+        // Runs the commands on both simulators and compares them
+        // @param name      The name to print for the test
+        // @param pool      The -pool name
+        // @param frames    The -frames count
+        // @param hugePages The -hugePages factor
+        public static void testBatch(String name, String pool, int frames, int hugePages) {
+            MemParam params = new MemParam();
+            params.numPages = 4096;
+            params.numPrograms = 64;
+            params.maxSize = 40000;
+            params.pageSize = 100;
+            params.pool = pool;
+            params.frames = frames;
+            params.hugePages = hugePages;
+            params.output = "quiet";
+            MemSim one = new MemSim(params);
+            MemSim batched = new MemSim(params);
+
+            Random random = new Random(2540);
+            CommandArray batch = new CommandArray();
+            int batches = 0;
+            for (int op = 0; op < 200000; op++) {
+                char opcode = "iitggsssp".charAt(random.nextInt(9));
+                int id = random.nextInt(80);
+                int size = random.nextInt(opcode == 'i' ? 40000 : 4000);
+                if (opcode == 'p') {
+                    id = -1;
+                }
+                one.execute(opcode, id, size);
+                batch.add(opcode, id, size);
+                if (random.nextInt(500) == 0) {
+                    batched.executeBatch(batch);
+                    batch.clear();
+                    batches++;
+                }
+            }
+            batched.executeBatch(batch);
+            one.handleExit();
+            batched.handleExit();
+
+            QuietOutput a = (QuietOutput) one.getOutput();
+            QuietOutput b = (QuietOutput) batched.getOutput();
+            String problem = null;
+            for (Outcome outcome : Outcome.values()) {
+                if (outcome != Outcome.PAGE_ROW && outcome != Outcome.HUGE_PAGE_ROW
+                        && a.getCount(outcome) != b.getCount(outcome))
+                    problem = outcome + " " + a.getCount(outcome) + " times, batched " + b.getCount(outcome);
+            }
+            if (one.getFreePageCount() != batched.getFreePageCount()
+                    || one.getOccupiedPageCount() != batched.getOccupiedPageCount())
+                problem = "free/occupied " + one.getFreePageCount() + "/" + one.getOccupiedPageCount()
+                        + ", batched " + batched.getFreePageCount() + "/" + batched.getOccupiedPageCount();
+            if (batched.getFreePageCount() + batched.getOccupiedPageCount() + frames != params.numPages)
+                problem = "pages lost by the batches";
+            if (one.getBytesInUse() != batched.getBytesInUse() || one.getRunningCount() != batched.getRunningCount())
+                problem = "bytes or programs differ";
+
+            System.out.printf("%-22s %s, %d batches, %d free pages%n", name + ":",
+                    problem == null ? "OK" : "FAILED: " + problem, batches, batched.getFreePageCount());
+        }
+}
@@ -0,0 +1,10 @@
+/**
+ * Best-fit: pages come from the smallest free extent that can hold the rest of
+ * the request. When no extent is large enough the largest one is used up first.
+ */
+public class BestFit implements AllocPolicy {
+
+    public int choose(FreePageIndex freePages, int numPages) {
+        return freePages.bestFit(numPages);
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a binary trace written by BinaryTraceWriter. See BinaryTraceWriter
+ * for the format. Records decode with a few shifts and no parsing; a trace
+ * file is memory-mapped a window at a time.
+ */
+public class BinaryTraceReader implements CommandSource {
+
+    private final ByteInput in;
+    private final MemParam params;
+
+    private char opcode;
+    private int progID;
+    private int size;
+
+    /**
+     * Opens the binary trace file 'path' and reads its header.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be read or is not a binary trace
+     */
+    public BinaryTraceReader(Path path) throws IOException {
+        this(new ByteInput(path));
+    }
+
+    /**
+     * Reads a binary trace from 'stream', starting with its header.
+     *
+     * @param stream InputStream
+     * @throws IOException when reading fails or the stream is not a binary trace
+     */
+    public BinaryTraceReader(InputStream stream) throws IOException {
+        this(new ByteInput(stream));
+    }
+
+    /**
+     * Reads a binary trace from 'in', starting with its header.
+     *
+     * @param in ByteInput
+     * @throws IOException when reading fails or the input is not a binary trace
+     */
+    public BinaryTraceReader(ByteInput in) throws IOException {
+        this.in = in;
+        if (readFixed() != BinaryTraceWriter.MAGIC) {
+            throw new IOException("Not a binary trace");
+        }
+        int version = readFixed();
+        if (version != BinaryTraceWriter.VERSION) {
+            throw new IOException("Unsupported binary trace version " + version);
+        }
+        this.params = new MemParam();
+        params.numPages = readFixed();
+        params.numPrograms = readFixed();
+        params.maxSize = readFixed();
+        params.pageSize = readFixed();
+    }
+
+    /**
+     * Checks whether the file 'path' starts like a binary trace.
+     *
+     * @param path Path
+     * @return boolean
+     * @throws IOException when the file cannot be read
+     */
+    public static boolean isBinaryTrace(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == BinaryTraceWriter.MAGIC;
+        }
+    }
+
+    /**
+     * Gets the limits recorded in the header of the trace.
+     *
+     * @return MemParam
+     */
+    public MemParam getParams() {
+        return params;
+    }
+
+    public char getOpcode() {
+        return opcode;
+    }
+
+    public int getProgID() {
+        return progID;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return boolean, false at the end of the trace
+     * @throws IOException when reading fails
+     * @throws NoSuchElementException when the trace ends inside a record
+     */
+    public boolean next() throws IOException {
+        int c = in.read();
+        if (c < 0) {
+            return false;
+        }
+        opcode = (char) c;
+        progID = readVarint();
+        size = readVarint();
+        return true;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads a zigzag-encoded varint.
+     *
+     * @return Integer
+     * @throws IOException when reading fails
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new NoSuchElementException();
+            }
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+    }
+
+    /**
+     * Reads a big-endian 4 byte int of the header.
+     *
+     * @return Integer
+     * @throws IOException when reading fails or the input ends
+     */
+    private int readFixed() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Binary trace header is cut short");
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+}
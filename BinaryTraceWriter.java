@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes commands as a binary trace.
+ *
+ * The file starts with a 24 byte header of big-endian ints: the magic number
+ * "MSTB", the format version, and NUM_PAGES, NUM_PROGRAMS, MAX_SIZE and
+ * PAGE_SIZE of the run the trace was made for. Every command then takes one
+ * record: the opcode as one byte, followed by prog_id and size as zigzag
+ * varints (7 bits per byte, low bits first, high bit set on all but the
+ * last byte). Typical records are 3 to 5 bytes.
+ */
+public class BinaryTraceWriter implements CommandSink {
+
+    public static final int MAGIC = 0x4D535442;  // "MSTB"
+    public static final int VERSION = 1;
+
+    // Records are collected in a buffer of this size before writing
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel out;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Creates (or replaces) the binary trace file 'path' and writes its header.
+     *
+     * @param path   Path
+     * @param params MemParam, recorded in the header
+     * @throws IOException when the file cannot be written
+     */
+    public BinaryTraceWriter(Path path, MemParam params) throws IOException {
+        this.out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt(params.numPages);
+        buf.putInt(params.numPrograms);
+        buf.putInt(params.maxSize);
+        buf.putInt(params.pageSize);
+    }
+
+    public void write(char opcode, int progID, int size) throws IOException {
+        // Longest record: 1 byte opcode and two 5 byte varints
+        if (buf.remaining() < 11) {
+            flush();
+        }
+        buf.put((byte) opcode);
+        putVarint(progID);
+        putVarint(size);
+    }
+
+    /**
+     * Writes out the buffered records.
+     *
+     * @throws IOException when writing fails
+     */
+    public void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * Adds 'value' to the buffer as a zigzag varint.
+     *
+     * @param value Integer
+     */
+    private void putVarint(int value) {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/**
+ * Page pool that keeps one bit per page in a long[] bitmap (1 = free).
+ *
+ * Free runs are found a word at a time with Long.numberOfTrailingZeros, and a
+ * second, summary bitmap has one bit per bitmap word that is set when that word
+ * has any free page, so completely used regions are skipped 4096 pages at a
+ * time. Requests take the lowest free pages first (first-fit by address) and
+ * may be spread over several runs.
+ *
+ * At one bit per page this is by far the smallest pool for very large page
+ * counts, and the memory it needs does not depend on fragmentation.
+ */
+public class BitmapPool implements PagePool {
+
+    private final int numPages;
+    private final long bits[];     // bit i of word w is page w * 64 + i
+    private final long summary[];  // bit i of word s is set when bits[s * 64 + i] != 0
+
+    private int firstSummary;  // no summary word below this one has a bit set
+    private int freePages;
+    private int numRuns;
+
+    /**
+     * Creates a pool where the pages 0 through numPages - 1 are free.
+     *
+     * @param numPages Integer
+     */
+    public BitmapPool(int numPages) {
+        this.numPages = numPages;
+        this.bits = new long[(int) (((long) numPages + 63) >>> 6)];
+        this.summary = new long[(bits.length + 63) >>> 6];
+        this.firstSummary = summary.length;
+
+        free(0, numPages - 1);
+    }
+
+    public int getFreePages() {
+        return freePages;
+    }
+
+    public int getExtentCount() {
+        return numRuns;
+    }
+
+    /**
+     * Gets the longest run of free pages, by walking every run. Used words
+     * are skipped through the summary.
+     *
+     * @return Integer
+     */
+    public int getLargestExtent() {
+        int largest = 0;
+        int seen = 0;
+        int page = 0;
+        while (seen < freePages) {
+            int start = nextFree(page);
+            int end = runEnd(start, numPages);
+            largest = Math.max(largest, end - start);
+            seen += end - start;
+            page = end;
+        }
+        return largest;
+    }
+
+    public int allocate(int numPages, List<PageUsage> dest) {
+        int moved = 0;
+        int page = 0;
+
+        while (moved < numPages && freePages > 0) {
+            int start = nextFree(page);
+            int end = runEnd(start, (int) Math.min((long) start + numPages - moved, this.numPages));
+
+            MemSim.putInOrder(start, end - 1, dest);
+            clear(start, end - 1);
+            moved += end - start;
+            page = end;
+        }
+        return moved;
+    }
+
+    /**
+     * Walks the free runs from the lowest page until one holds an aligned
+     * run of 'numPages' pages.
+     */
+    public int allocateAligned(int numPages, int alignment) {
+        int seen = 0;
+        int page = 0;
+        while (seen < freePages) {
+            int start = nextFree(page);
+            int end = runEnd(start, this.numPages);
+            long first = ((long) start + alignment - 1) / alignment * alignment;
+            if (first + numPages <= end) {
+                clear((int) first, (int) first + numPages - 1);
+                return (int) first;
+            }
+            seen += end - start;
+            page = end;
+        }
+        return -1;
+    }
+
+    public void free(int start, int end) {
+        boolean before = start > 0 && isFree(start - 1);
+        boolean after = end + 1 < numPages && isFree(end + 1);
+
+        int first = start >>> 6;
+        int last = end >>> 6;
+        for (int w = first; w <= last; w++) {
+            long mask = rangeMask(w, start, end);
+            freePages += Long.bitCount(mask & ~bits[w]);
+            bits[w] |= mask;
+        }
+
+        for (int s = first >>> 6; s <= last >>> 6; s++) {
+            int from = Math.max(first, s << 6);
+            int to = Math.min(last, (s << 6) + 63);
+            summary[s] |= (-1L >>> (63 - (to - from))) << (from & 63);
+        }
+        firstSummary = Math.min(firstSummary, first >>> 6);
+
+        numRuns += 1 - (before ? 1 : 0) - (after ? 1 : 0);
+    }
+
+    public void removeAll() {
+        Arrays.fill(bits, 0);
+        Arrays.fill(summary, 0);
+        firstSummary = summary.length;
+        freePages = 0;
+        numRuns = 0;
+    }
+
+    public void copyFreeExtents(List<PageUsage> dest) {
+        int page = 0;
+        int left = freePages;
+        while (left > 0) {
+            int start = nextFree(page);
+            int end = runEnd(start, numPages);
+            dest.add(dest.size() + 1, start, end - 1);
+            left -= end - start;
+            page = end;
+        }
+    }
+
+    /**
+     * Checks whether 'page' is free.
+     *
+     * @param page Integer
+     * @return boolean
+     */
+    public boolean isFree(int page) {
+        return (bits[page >>> 6] & (1L << page)) != 0;
+    }
+
+    /**
+     * Gets the lowest free page at or after 'page'.
+     *
+     * Pre-condition: there is such a page
+     *
+     * @param page Integer
+     * @return Integer
+     */
+    private int nextFree(int page) {
+        int w = page >>> 6;
+        long word = bits[w] & (-1L << page);
+        if (word != 0) {
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        // Finds the next bitmap word with a free page through the summary
+        w++;
+        int s = Math.max(w >>> 6, firstSummary);
+        long sum = s == w >>> 6 ? summary[s] & (-1L << w) : summary[s];
+        while (sum == 0) {
+            sum = summary[++s];
+        }
+        if (page == 0) {
+            firstSummary = s;
+        }
+
+        w = (s << 6) + Long.numberOfTrailingZeros(sum);
+        return (w << 6) + Long.numberOfTrailingZeros(bits[w]);
+    }
+
+    /**
+     * Gets the first page at or after 'start' that is not free, looking no
+     * further than 'limit'.
+     *
+     * @param start Integer, a free page
+     * @param limit Integer
+     * @return Integer, the page after the end of the run, at most 'limit'
+     */
+    private int runEnd(int start, int limit) {
+        int w = start >>> 6;
+        long used = ~bits[w] & (-1L << start);
+
+        // Whole free words are skipped one at a time
+        while (used == 0 && ((long) w << 6) + 64 < limit) {
+            w++;
+            used = w < bits.length ? ~bits[w] : -1L;
+        }
+
+        long end = used == 0 ? ((long) w << 6) + 64 : ((long) w << 6) + Long.numberOfTrailingZeros(used);
+        return (int) Math.min(Math.min(end, limit), numPages);
+    }
+
+    /**
+     * Marks the free pages 'start' through 'end' as used. They must all
+     * belong to the same free run.
+     *
+     * @param start Integer
+     * @param end   Integer
+     */
+    private void clear(int start, int end) {
+        boolean before = start > 0 && isFree(start - 1);
+        boolean after = end + 1 < numPages && isFree(end + 1);
+
+        for (int w = start >>> 6; w <= end >>> 6; w++) {
+            bits[w] &= ~rangeMask(w, start, end);
+            if (bits[w] == 0) {
+                summary[w >>> 6] &= ~(1L << w);
+            }
+        }
+        freePages -= end - start + 1;
+
+        numRuns += (before ? 1 : 0) + (after ? 1 : 0) - 1;
+    }
+
+    /**
+     * Gets the bits of word 'w' that fall between pages 'start' and 'end'.
+     *
+     * @param w     Integer
+     * @param start Integer
+     * @param end   Integer
+     * @return Long
+     */
+    private static long rangeMask(int w, int start, int end) {
+        long mask = -1L;
+        if (start > w << 6) {
+            mask &= -1L << start;
+        }
+        if (end < (w << 6) + 63) {
+            mask &= -1L >>> (63 - (end & 63));
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * Page pool using the binary buddy system. Free pages are kept as blocks of
+ * 2^k pages that start on a multiple of 2^k, with one free list per order k.
+ *
+ * A request for n pages gets one block of the smallest order that holds n,
+ * split off a larger block when needed, so up to n - 1 pages of it may be
+ * unused (internal fragmentation). Only when no block is that large does the
+ * request fall back to several smaller blocks. Freed pages are cut into
+ * aligned blocks and each block is merged with its buddy for as long as the
+ * buddy is free as well. Both paths are O(log NUM_PAGES), nothing is scanned.
+ *
+ * The free lists are threaded through per-page arrays, so the pool needs
+ * nine bytes per page no matter how fragmented memory gets.
+ */
+public class BuddyPool implements PagePool {
+
+    public static final int NULL = -1;
+
+    private final int numPages;
+    private final int maxOrder;
+
+    private final byte order[];   // order + 1 for the first page of a free block, else 0
+    private final int next[];     // next free block of the same order
+    private final int prev[];     // previous free block of the same order
+    private final int head[];     // first free block of each order
+
+    private int orderMask;  // bit k is set when the order k list is not empty
+    private int freePages;
+    private int numBlocks;
+
+    /**
+     * Creates a pool where the pages 0 through numPages - 1 are free.
+     *
+     * @param numPages Integer
+     */
+    public BuddyPool(int numPages) {
+        this.numPages = numPages;
+        this.maxOrder = 31 - Integer.numberOfLeadingZeros(numPages);
+        this.order = new byte[numPages];
+        this.next = new int[numPages];
+        this.prev = new int[numPages];
+        this.head = new int[maxOrder + 1];
+        Arrays.fill(head, NULL);
+
+        free(0, numPages - 1);
+    }
+
+    public int getFreePages() {
+        return freePages;
+    }
+
+    public int getExtentCount() {
+        return numBlocks;
+    }
+
+    public int getLargestExtent() {
+        return orderMask == 0 ? 0 : 1 << (31 - Integer.numberOfLeadingZeros(orderMask));
+    }
+
+    public void removeAll() {
+        Arrays.fill(order, (byte) 0);
+        Arrays.fill(head, NULL);
+        orderMask = 0;
+        freePages = 0;
+        numBlocks = 0;
+    }
+
+    public int allocate(int numPages, List<PageUsage> dest) {
+        int moved = 0;
+
+        while (moved < numPages && freePages > 0) {
+            int need = numPages - moved;
+            int k = 32 - Integer.numberOfLeadingZeros(need - 1);
+
+            // Smallest non-empty order that holds the whole rest of the request
+            int larger = k <= maxOrder ? orderMask & (-1 << k) : 0;
+            int j;
+            if (larger != 0) {
+                j = Integer.numberOfTrailingZeros(larger);
+            } else {
+                // Nothing that large is free, use up the largest block there is
+                j = 31 - Integer.numberOfLeadingZeros(orderMask);
+                k = j;
+            }
+
+            int block = head[j];
+            unlink(block, j);
+
+            // Splits the block down, giving back the upper halves
+            while (j > k) {
+                j--;
+                link(block + (1 << j), j);
+            }
+
+            MemSim.putInOrder(block, block + (1 << k) - 1, dest);
+            moved += 1 << k;
+        }
+        return moved;
+    }
+
+    /**
+     * A request gets whole blocks, so it may get more pages than it asked for.
+     */
+    public boolean allocatesExactly() {
+        return false;
+    }
+
+    /**
+     * Hands out a block of order log2(numPages), which starts at a multiple
+     * of its size. Only a power of two pages, aligned to no more than that,
+     * can be served.
+     */
+    public int allocateAligned(int numPages, int alignment) {
+        if (Integer.bitCount(numPages) != 1 || Integer.bitCount(alignment) != 1 || alignment > numPages) {
+            return -1;
+        }
+        int k = Integer.numberOfTrailingZeros(numPages);
+        int larger = k <= maxOrder ? orderMask & (-1 << k) : 0;
+        if (larger == 0) {
+            return -1;
+        }
+        int j = Integer.numberOfTrailingZeros(larger);
+        int block = head[j];
+        unlink(block, j);
+        while (j > k) {
+            j--;
+            link(block + (1 << j), j);
+        }
+        return block;
+    }
+
+    public void free(int start, int end) {
+        int page = start;
+        while (page <= end) {
+
+            // Largest aligned block starting at 'page' that stays inside the range
+            int k = page == 0 ? maxOrder : Math.min(maxOrder, Integer.numberOfTrailingZeros(page));
+            while ((1L << k) > (long) end - page + 1) {
+                k--;
+            }
+
+            freeBlock(page, k);
+            page += 1 << k;
+        }
+    }
+
+    public void copyFreeExtents(List<PageUsage> dest) {
+        long blocks[] = new long[numBlocks];
+        int count = 0;
+        for (int k = 0; k <= maxOrder; k++) {
+            for (int block = head[k]; block != NULL; block = next[block]) {
+                blocks[count++] = ((long) block << 32) | (block + (1 << k) - 1);
+            }
+        }
+
+        Arrays.sort(blocks);
+        for (int i = 0; i < count; i++) {
+            dest.add(dest.size() + 1, (int) (blocks[i] >>> 32), (int) blocks[i]);
+        }
+    }
+
+    /**
+     * Frees the block of order 'k' at 'block', merging it with its buddy
+     * as long as the buddy is a free block of the same order.
+     *
+     * @param block Integer
+     * @param k     Integer
+     */
+    private void freeBlock(int block, int k) {
+        if (order[block] != 0) {
+            return; // already free
+        }
+
+        while (k < maxOrder) {
+            int buddy = block ^ (1 << k);
+            if (buddy >= numPages || order[buddy] != k + 1) {
+                break;
+            }
+            unlink(buddy, k);
+            block = Math.min(block, buddy);
+            k++;
+        }
+        link(block, k);
+    }
+
+    /**
+     * Puts the block at 'block' on the free list of order 'k'.
+     *
+     * @param block Integer
+     * @param k     Integer
+     */
+    private void link(int block, int k) {
+        order[block] = (byte) (k + 1);
+        prev[block] = NULL;
+        next[block] = head[k];
+        if (head[k] != NULL) {
+            prev[head[k]] = block;
+        }
+        head[k] = block;
+        orderMask |= 1 << k;
+        freePages += 1 << k;
+        numBlocks++;
+    }
+
+    /**
+     * Takes the block at 'block' off the free list of order 'k'.
+     *
+     * @param block Integer
+     * @param k     Integer
+     */
+    private void unlink(int block, int k) {
+        order[block] = 0;
+        if (prev[block] != NULL) {
+            next[prev[block]] = next[block];
+        } else {
+            head[k] = next[block];
+            if (head[k] == NULL) {
+                orderMask &= ~(1 << k);
+            }
+        }
+        if (next[block] != NULL) {
+            prev[next[block]] = prev[block];
+        }
+        freePages -= 1 << k;
+        numBlocks--;
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte at a time input for the trace readers. A file is memory-mapped a
+ * window at a time; a stream such as standard input is read through one
+ * large reusable buffer.
+ */
+public class ByteInput implements Closeable {
+
+    // Bytes of a file mapped at a time
+    public static final int MAP_WINDOW = 64 << 20;
+
+    // Size of the buffer used for streams
+    public static final int STREAM_BUFFER = 1 << 20;
+
+    private final FileChannel file;        // null when reading a stream
+    private final ReadableByteChannel in;  // null when reading a file
+    private final long fileSize;
+
+    private ByteBuffer buf;
+    private long mapped;  // file offset of the current window
+
+    /**
+     * Creates an input that maps the file 'path'.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public ByteInput(Path path) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.in = null;
+        this.fileSize = file.size();
+        this.mapped = 0;
+        this.buf = file.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(MAP_WINDOW, fileSize));
+    }
+
+    /**
+     * Creates an input that reads 'stream', e.g. System.in.
+     *
+     * @param stream InputStream
+     */
+    public ByteInput(InputStream stream) {
+        this.file = null;
+        this.in = Channels.newChannel(stream);
+        this.fileSize = -1;
+        this.buf = ByteBuffer.allocateDirect(STREAM_BUFFER);
+        this.buf.flip();
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return Integer 0-255, -1 at the end of the input
+     * @throws IOException when reading fails
+     */
+    public int read() throws IOException {
+        if (!buf.hasRemaining() && !refill()) {
+            return -1;
+        }
+        return buf.get() & 0xFF;
+    }
+
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        } else {
+            in.close();
+        }
+    }
+
+    /**
+     * Moves on to the next window of the file, or reads the next
+     * chunk of the stream.
+     *
+     * @return boolean, false at the end of the input
+     * @throws IOException when reading fails
+     */
+    private boolean refill() throws IOException {
+        if (file != null) {
+            mapped += buf.limit();
+            if (mapped >= fileSize) {
+                return false;
+            }
+            buf = file.map(FileChannel.MapMode.READ_ONLY, mapped, Math.min(MAP_WINDOW, fileSize - mapped));
+            return true;
+        }
+
+        buf.clear();
+        int n = in.read(buf);
+        while (n == 0) {
+            n = in.read(buf);
+        }
+        buf.flip();
+        return n > 0;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * CLOCK (second chance): every frame has a reference bit, set when its page
+ * is loaded or accessed. A hand sweeps over the frames in a circle, clearing
+ * set bits, and evicts the page of the first frame whose bit is clear.
+ */
+public class ClockReplacement implements ReplacementPolicy {
+
+    private final boolean referenced[];
+    private final int free[];   // stack of free frames
+    private int numFree;
+    private int hand;
+
+    public ClockReplacement(int frames) {
+        referenced = new boolean[frames];
+        free = new int[frames];
+        for (int i = 0; i < frames; i++) {
+            free[i] = frames - 1 - i;
+        }
+        numFree = frames;
+    }
+
+    public void hit(int frame) {
+        referenced[frame] = true;
+    }
+
+    public int fault(long key) {
+        int frame;
+        if (numFree > 0) {
+            frame = free[--numFree];
+        } else {
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = hand + 1 == referenced.length ? 0 : hand + 1;
+            }
+            frame = hand;
+            hand = hand + 1 == referenced.length ? 0 : hand + 1;
+        }
+        referenced[frame] = true;
+        return frame;
+    }
+
+    public void release(int frame) {
+        referenced[frame] = false;
+        free[numFree++] = frame;
+    }
+}
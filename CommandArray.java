@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A whole trace held in memory as three parallel arrays, so that it is read
+ * and parsed only once and can then be replayed any number of times. Once
+ * filled it is never changed, and any number of threads may replay it at
+ * the same time, each through its own source(). MemSim also collects the
+ * commands of a batch in one, which it empties with clear after each batch.
+ */
+public class CommandArray {
+
+    private char opcodes[] = new char[1024];
+    private int ids[] = new int[1024];
+    private int sizes[] = new int[1024];
+    private int length;
+
+    // Limits the trace was recorded with, when it says so
+    private MemParam params;
+
+    /**
+     * Reads every command of 'scan'.
+     *
+     * @param scan CommandSource
+     * @return CommandArray
+     * @throws IOException when reading fails
+     */
+    public static CommandArray read(CommandSource scan) throws IOException {
+        CommandArray commands = new CommandArray();
+        while (scan.next()) {
+            commands.add(scan.getOpcode(), scan.getProgID(), scan.getSize());
+        }
+        return commands;
+    }
+
+    /**
+     * Reads a text or binary trace file. For a binary trace, getParams gives
+     * the limits of its header with 'args' applied on top; for a text trace
+     * the MemParam defaults with 'args' applied on top.
+     *
+     * @param path     Path
+     * @param args     String[], MemParam flags
+     * @param ownFlags String[], names of the caller's own flags in 'args'
+     * @return CommandArray
+     * @throws IOException when reading fails
+     * @throws IllegalArgumentException when a flag is unknown or not valid
+     */
+    public static CommandArray read(Path path, String[] args, String... ownFlags) throws IOException {
+        CommandArray commands;
+        if (BinaryTraceReader.isBinaryTrace(path)) {
+            try (BinaryTraceReader binary = new BinaryTraceReader(path)) {
+                commands = read(binary);
+                commands.params = binary.getParams().apply(args, ownFlags);
+            }
+        } else {
+            try (TraceReader text = new TraceReader(path)) {
+                commands = read(text);
+                commands.params = MemParam.fromArgs(args, ownFlags);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Adds a command at the end.
+     *
+     * @param opcode Char
+     * @param progID Integer
+     * @param size   Integer
+     */
+    public void add(char opcode, int progID, int size) {
+        if (length == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, length * 2);
+            ids = Arrays.copyOf(ids, length * 2);
+            sizes = Arrays.copyOf(sizes, length * 2);
+        }
+        opcodes[length] = opcode;
+        ids[length] = progID;
+        sizes[length] = size;
+        length++;
+    }
+
+    /**
+     * Drops every command, keeping the arrays for the next ones.
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public char getOpcode(int i) {
+        return opcodes[i];
+    }
+
+    public int getProgID(int i) {
+        return ids[i];
+    }
+
+    public int getSize(int i) {
+        return sizes[i];
+    }
+
+    /**
+     * Gets the limits to replay the trace with, see read(Path, String[]).
+     *
+     * @return MemParam, null when the commands were not read from a file
+     */
+    public MemParam getParams() {
+        return params;
+    }
+
+    public void setParams(MemParam params) {
+        this.params = params;
+    }
+
+    /**
+     * Gets a new reader positioned before the first command.
+     *
+     * @return CommandSource
+     */
+    public CommandSource source() {
+        return new CommandSource() {
+            private int next;
+
+            public boolean next() {
+                if (next == length) {
+                    return false;
+                }
+                next++;
+                return true;
+            }
+
+            public char getOpcode() {
+                return opcodes[next - 1];
+            }
+
+            public int getProgID() {
+                return ids[next - 1];
+            }
+
+            public int getSize() {
+                return sizes[next - 1];
+            }
+
+            public void close() {
+            }
+        };
+    }
+}
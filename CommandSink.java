@@ -0,0 +1,19 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Somewhere simulator commands <opcode> <prog_id> <size> can be written to,
+ * such as a trace file.
+ */
+public interface CommandSink extends Closeable {
+
+    /**
+     * Writes one command.
+     *
+     * @param opcode Char
+     * @param progID Integer
+     * @param size   Integer
+     * @throws IOException when writing fails
+     */
+    void write(char opcode, int progID, int size) throws IOException;
+}
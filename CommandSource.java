@@ -0,0 +1,24 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of simulator commands <opcode> <prog_id> <size>, read one at a
+ * time: next() moves to the following command, whose parts are then
+ * available from getOpcode, getProgID and getSize.
+ */
+public interface CommandSource extends Closeable {
+
+    /**
+     * Moves to the next command.
+     *
+     * @return boolean, false when there are no more commands
+     * @throws IOException when reading fails
+     */
+    boolean next() throws IOException;
+
+    char getOpcode();
+
+    int getProgID();
+
+    int getSize();
+}
@@ -0,0 +1,394 @@
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulator that many threads may drive at the same time, for modelling
+ * many processes that allocate in parallel.
+ *
+ * The handlers follow the rules of MemSim but return the Outcome of each
+ * command instead of reporting it, since an OutputSink is meant for one
+ * thread. Growing takes the pages that the new size needs beyond the pages
+ * the program already has, and shrinking gives back the pages at the end of
+ * the program that its new size no longer needs.
+ *
+ * The running programs are spread over STRIPES program tables by id, each
+ * with its own lock, so commands for different programs rarely wait for
+ * each other. The pages come from a ConcurrentPagePool (see
+ * MemParam.newConcurrentPool), and the program count and bytes in use are
+ * atomic counters.
+ *
+ * java ConcurrentMemSim [MemParam flags] [WorkloadGenerator settings] -threads <n>
+ * runs a synthetic workload on n threads, each with its own programs and an
+ * equal share of the pages, and prints how many commands per second it did.
+ */
+public class ConcurrentMemSim {
+
+    // Number of program tables, a power of two
+    public static final int STRIPES = 64;
+
+    public final int numPages;
+    public final int numPrograms;
+    public final int maxSize;
+    public final int pageSize;
+
+    private final ConcurrentPagePool freePageList;
+    private final Stripe stripes[];
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong bytesInUse = new AtomicLong();
+
+    /**
+     * The running programs whose id falls in one stripe. The stripe is the
+     * lock for its table and for the programs in it.
+     */
+    private static class Stripe {
+        ProgTable programs;
+    }
+
+    /**
+     * Creates a simulator with every page free and no programs.
+     *
+     * @param params MemParam
+     */
+    public ConcurrentMemSim(MemParam params) {
+        this.numPages = params.numPages;
+        this.numPrograms = params.numPrograms;
+        this.maxSize = params.maxSize;
+        this.pageSize = params.pageSize;
+        this.freePageList = params.newConcurrentPool();
+
+        // Tables start with room for twice a fair share and grow when an id
+        // lands in a full one
+        int capacity = Math.min(numPrograms, Math.max(16, numPrograms / STRIPES * 2));
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+            stripes[i].programs = new ProgTable(capacity);
+        }
+    }
+
+    public int getFreePageCount() {
+        return freePageList.getFreePages();
+    }
+
+    public int getFreeExtentCount() {
+        return freePageList.getExtentCount();
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+    /**
+     * Adds every free extent to the end of 'dest', in ascending order.
+     *
+     * @param dest List<PageUsage>
+     */
+    public void copyFreeExtents(List<PageUsage> dest) {
+        freePageList.copyFreeExtents(dest);
+    }
+
+    /**
+     * Adds the pages of program 'progID' to the end of 'dest', in ascending order.
+     *
+     * @param progID Integer
+     * @param dest   List<PageUsage>
+     * @return boolean, false when the program does not exist
+     */
+    public boolean copyPages(int progID, List<PageUsage> dest) {
+        Stripe stripe = stripe(progID);
+        synchronized (stripe) {
+            ProgInfo prog = stripe.programs.get(progID);
+            if (prog == null) {
+                return false;
+            }
+            for (int i = 1; i <= prog.prog_usage.size(); i++) {
+                dest.add(dest.size() + 1, prog.prog_usage.getStart(i), prog.prog_usage.getEnd(i));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Gives back what the page pool keeps for the calling thread, see
+     * ConcurrentPagePool.releaseThread. Workers call it once they are done.
+     */
+    public void releaseThread() {
+        freePageList.releaseThread();
+    }
+
+    /**
+     * Runs one command of the simulation. 'p' and 'x' report nothing here.
+     *
+     * @param opcode Char
+     * @param progID Int
+     * @param size   Int
+     * @return Outcome, null for 'p' and 'x'
+     */
+    public Outcome execute(char opcode, int progID, int size) {
+        switch (opcode) {
+            case 'i':
+                return handleInitiate(progID, size);
+            case 't':
+                return handleTerminate(progID);
+            case 'g':
+                return handleGrow(progID, size);
+            case 's':
+                return handleShrink(progID, size);
+            case 'p':
+            case 'x':
+                return null;
+            default:
+                return Outcome.UNKNOWN;
+        }
+    }
+
+    /**
+     * Starts program 'progID' with 'size' bytes.
+     *
+     * @param progID Integer
+     * @param size   Integer
+     * @return Outcome
+     */
+    public Outcome handleInitiate(int progID, int size) {
+        if (progID < 0) {
+            return Outcome.INITIATE_BAD_ID;
+        }
+        Stripe stripe = stripe(progID);
+        synchronized (stripe) {
+            if (stripe.programs.find(progID) != ProgTable.NULL) {
+                return Outcome.INITIATE_EXISTS;
+            }
+            if (!admit()) {
+                return Outcome.INITIATE_TOO_MANY;
+            }
+
+            ProgInfo prog = add(stripe, progID);
+            if (!freePageList.tryAllocate(calcPagesHelper(size), prog.prog_usage)) {
+                stripe.programs.remove(progID);
+                running.decrementAndGet();
+                return Outcome.INITIATE_NO_SPACE;
+            }
+            prog.bytes = size;
+            bytesInUse.addAndGet(size);
+            return Outcome.INITIATED;
+        }
+    }
+
+    /**
+     * Ends program 'progID' and gives all of its pages back.
+     *
+     * @param progID Integer
+     * @return Outcome
+     */
+    public Outcome handleTerminate(int progID) {
+        Stripe stripe = stripe(progID);
+        synchronized (stripe) {
+            ProgInfo prog = stripe.programs.get(progID);
+            if (prog == null) {
+                return Outcome.TERMINATE_MISSING;
+            }
+
+            List<PageUsage> pages = prog.prog_usage;
+            for (int i = 1; i <= pages.size(); i++) {
+                freePageList.free(pages.getStart(i), pages.getEnd(i));
+            }
+            pages.removeAll();
+            bytesInUse.addAndGet(-prog.bytes);
+            stripe.programs.remove(progID);
+            running.decrementAndGet();
+            return Outcome.TERMINATED;
+        }
+    }
+
+    /**
+     * Adds 'size' bytes to program 'progID'.
+     *
+     * @param progID Integer
+     * @param size   Integer
+     * @return Outcome
+     */
+    public Outcome handleGrow(int progID, int size) {
+        Stripe stripe = stripe(progID);
+        synchronized (stripe) {
+            ProgInfo prog = stripe.programs.get(progID);
+            if (prog == null) {
+                return Outcome.GROW_MISSING;
+            }
+            if ((long) prog.bytes + size > maxSize) {
+                return Outcome.GROW_MAX_SIZE;
+            }
+
+            int newSize = prog.bytes + size;
+            int needed = calcPagesHelper(newSize) - calcPagesHelper(prog.bytes);
+            if (needed > 0 && !freePageList.tryAllocate(needed, prog.prog_usage)) {
+                return Outcome.GROW_NO_SPACE;
+            }
+            prog.bytes = newSize;
+            bytesInUse.addAndGet(size);
+            return Outcome.GREW;
+        }
+    }
+
+    /**
+     * Takes 'size' bytes off program 'progID', giving back the pages at its
+     * end that are no longer needed.
+     *
+     * @param progID Integer
+     * @param size   Integer
+     * @return Outcome
+     */
+    public Outcome handleShrink(int progID, int size) {
+        Stripe stripe = stripe(progID);
+        synchronized (stripe) {
+            ProgInfo prog = stripe.programs.get(progID);
+            if (prog == null) {
+                return Outcome.SHRINK_MISSING;
+            }
+            if (prog.bytes - size < 0) {
+                return Outcome.SHRINK_TOO_MUCH;
+            }
+
+            int newSize = prog.bytes - size;
+            prog.prog_usage.trimTo(calcPagesHelper(newSize), freePageList);
+            prog.bytes = newSize;
+            bytesInUse.addAndGet(-size);
+            return Outcome.SHRANK;
+        }
+    }
+
+    /**
+     * Counts one more running program, unless there are numPrograms already.
+     *
+     * @return boolean
+     */
+    private boolean admit() {
+        while (true) {
+            int count = running.get();
+            if (count == numPrograms) {
+                return false;
+            }
+            if (running.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds program 'progID' to the table of 'stripe', moving the table to
+     * one twice as large when it is full. The caller holds the stripe lock.
+     *
+     * @param stripe Stripe
+     * @param progID Integer
+     * @return ProgInfo
+     */
+    private ProgInfo add(Stripe stripe, int progID) {
+        ProgInfo prog = stripe.programs.add(progID);
+        if (prog == null) {
+            ProgTable old = stripe.programs;
+            ProgTable bigger = new ProgTable((int) Math.min(numPrograms, 2L * old.capacity()));
+            for (int slot = 0; slot < old.capacity(); slot++) {
+                ProgInfo moving = old.getSlot(slot);
+                if (old.inUse(slot)) {
+                    ProgInfo moved = bigger.add(moving.id);
+                    moved.bytes = moving.bytes;
+                    moved.prog_usage = moving.prog_usage;
+                }
+            }
+            stripe.programs = bigger;
+            prog = bigger.add(progID);
+        }
+        return prog;
+    }
+
+    private Stripe stripe(int progID) {
+        return stripes[(progID * 0x85EBCA6B) >>> (32 - Integer.numberOfTrailingZeros(STRIPES))];
+    }
+
+    private int calcPagesHelper(int bytes) {
+        return (int) (((long) bytes + pageSize - 1) / pageSize);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Properties options = new Properties();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                break;
+            }
+            options.setProperty(args[i].substring(1), args[i + 1]);
+        }
+
+        int threads;
+        MemParam params;
+        MemParam share;
+        try {
+            threads = Integer.parseInt(options.getProperty("threads",
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+            String own[] = Arrays.copyOf(WorkloadGenerator.SETTINGS, WorkloadGenerator.SETTINGS.length + 1);
+            own[own.length - 1] = "threads";
+            params = MemParam.fromArgs(args, own);
+            // What each thread's workload is made for
+            share = MemParam.fromArgs(args, own);
+            share.numPages = Math.max(1, params.numPages / threads);
+            share.numPrograms = Math.max(1, params.numPrograms / threads);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        ConcurrentMemSim sim = new ConcurrentMemSim(params);
+        Thread workers[] = new Thread[threads];
+        long counts[][] = new long[threads][Outcome.values().length];
+
+        for (int t = 0; t < threads; t++) {
+            Properties own = new Properties();
+            own.putAll(options);
+            own.setProperty("seed", Long.toString(Long.parseLong(options.getProperty("seed", "1")) + t));
+            WorkloadGenerator workload = new WorkloadGenerator(share, own);
+            int idBase = t * share.numPrograms;
+            long count[] = counts[t];
+
+            workers[t] = new Thread(() -> {
+                while (workload.next()) {
+                    Outcome outcome = sim.execute(workload.getOpcode(),
+                            idBase + workload.getProgID(), workload.getSize());
+                    if (outcome != null) {
+                        count[outcome.ordinal()]++;
+                    }
+                }
+                sim.releaseThread();
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long total = 0;
+        System.out.printf("Opcode  Outcome                   Count%n");
+        for (Outcome outcome : Outcome.values()) {
+            long sum = 0;
+            for (long count[] : counts) {
+                sum += count[outcome.ordinal()];
+            }
+            total += sum;
+            if (sum > 0) {
+                System.out.printf("%-7c %-24s %6d%n", outcome.opcode, outcome.label, sum);
+            }
+        }
+        System.out.printf("%d threads, %d commands in %.2f s, %.0f commands/s%n",
+                threads, total, seconds, total / seconds);
+        System.out.printf("Free pages: %d in %d extents%n", sim.getFreePageCount(), sim.getFreeExtentCount());
+        System.out.printf("Running programs: %d, bytes in use: %d%n", sim.getRunningCount(), sim.getBytesInUse());
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentMemSimTest {
+    // This class is meant to test ConcurrentMemSim. Several threads start,
+// grow, shrink and terminate their own programs at the same time. Every
+// page a program gets is claimed in a shared owner table, which fails if
+// another program holds the page already. At the end every page must be
+// either owned or free, and never both. It also checks that the caches of
+// a sharded pool do not pile up while threads come and go.
+
+        public static final int THREADS = 32;
+        public static final int PAGES = 4096;
+
+        public static void main(String args[]) throws InterruptedException {
+            testSim("sharded", "sharded");
+            testSim("atomic bitmap", "atomic");
+            testChurn();
+        }
+
+        // Runs many short lived threads against a sharded pool, half of them
+        // releasing it before they end, and checks that their caches are
+        // given back and no free page is lost
+        public static void testChurn() throws InterruptedException {
+            ShardedPagePool pool = new ShardedPagePool(PAGES, 4, "first");
+            for (int t = 0; t < 200; t++) {
+                int seed = t;
+                Thread thread = new Thread(() -> {
+                    Random random = new Random(seed);
+                    List<PageUsage> pages = new List<PageUsage>();
+                    for (int op = 0; op < 50; op++)
+                        pool.allocate(1 + random.nextInt(8), pages);
+                    for (int i = 1; i <= pages.size(); i++)
+                        pool.free(pages.getStart(i), pages.getEnd(i));
+                    if (seed % 2 == 0)
+                        pool.releaseThread();
+                });
+                thread.start();
+                thread.join();
+            }
+            List<PageUsage> pages = new List<PageUsage>();
+            pool.allocate(1, pages);
+            pool.free(pages.getStart(1), pages.getEnd(1));
+            List<PageUsage> free = new List<PageUsage>();
+            pool.copyFreeExtents(free);
+            String problem = null;
+            if (pool.getCacheCount() != 1)
+                problem = pool.getCacheCount() + " caches for 1 thread";
+            else if (free.size() != 1 || free.getPages(1) != PAGES || pool.getFreePages() != PAGES)
+                problem = "free pages lost, " + pool.getFreePages() + " in " + free.size() + " extents";
+            System.out.printf("%-22s %s\n", "sharded, churn:", problem == null ? "OK" : problem);
+        }
+
+        // Runs the threads against a simulator with the given page pool
+        // @param name The name to print for the test
+        // @param pool The -pool name
+        public static void testSim(String name, String pool) throws InterruptedException {
+            MemParam params = new MemParam();
+            params.numPages = PAGES;
+            params.numPrograms = THREADS * 64;
+            params.maxSize = 64;
+            params.pageSize = 1;
+            params.pool = pool;
+            ConcurrentMemSim sim = new ConcurrentMemSim(params);
+
+            AtomicIntegerArray owner = new AtomicIntegerArray(PAGES);
+            for (int p = 0; p < PAGES; p++)
+                owner.set(p, -1);
+            AtomicReference<String> problem = new AtomicReference<String>();
+
+            Thread threads[] = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                int seed = t;
+                threads[t] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int op = 0; op < 25000 && problem.get() == null; op++) {
+                        int id = seed * 64 + random.nextInt(64);
+                        int size = 1 + random.nextInt(16);
+                        release(sim, id, owner);
+                        switch (random.nextInt(4)) {
+                            case 0: sim.handleInitiate(id, size); break;
+                            case 1: sim.handleTerminate(id); break;
+                            case 2: sim.handleGrow(id, size); break;
+                            default: sim.handleShrink(id, size); break;
+                        }
+                        String found = claim(sim, id, owner);
+                        if (found != null)
+                            problem.compareAndSet(null, found);
+                    }
+                    sim.releaseThread();
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+
+            if (problem.get() == null)
+                problem.set(checkPages(sim, owner));
+            System.out.printf("%-22s %s\n", name + ":", problem.get() == null ? "OK" : problem.get());
+        }
+
+        // Gives up the claim of program 'id' on its pages
+        public static void release(ConcurrentMemSim sim, int id, AtomicIntegerArray owner) {
+            List<PageUsage> pages = new List<PageUsage>();
+            sim.copyPages(id, pages);
+            for (int i = 1; i <= pages.size(); i++)
+                for (int p = pages.getStart(i); p <= pages.getEnd(i); p++)
+                    owner.set(p, -1);
+        }
+
+        // Claims the pages of program 'id', returns a problem or null
+        public static String claim(ConcurrentMemSim sim, int id, AtomicIntegerArray owner) {
+            List<PageUsage> pages = new List<PageUsage>();
+            sim.copyPages(id, pages);
+            for (int i = 1; i <= pages.size(); i++)
+                for (int p = pages.getStart(i); p <= pages.getEnd(i); p++)
+                    if (!owner.compareAndSet(p, -1, id))
+                        return "page " + p + " owned by " + owner.get(p) + " and " + id;
+            return null;
+        }
+
+        // Checks that every page is owned or free, and not both
+        public static String checkPages(ConcurrentMemSim sim, AtomicIntegerArray owner) {
+            boolean free[] = new boolean[PAGES];
+            List<PageUsage> extents = new List<PageUsage>();
+            int counted = 0;
+            sim.copyFreeExtents(extents);
+            for (int i = 1; i <= extents.size(); i++) {
+                for (int p = extents.getStart(i); p <= extents.getEnd(i); p++) {
+                    if (owner.get(p) != -1)
+                        return "page " + p + " both free and owned by " + owner.get(p);
+                    free[p] = true;
+                    counted++;
+                }
+            }
+            for (int p = 0; p < PAGES; p++)
+                if (!free[p] && owner.get(p) == -1)
+                    return "page " + p + " lost";
+            if (counted != sim.getFreePageCount())
+                return "free count " + sim.getFreePageCount() + " for " + counted + " free pages";
+            return null;
+        }
+}
@@ -0,0 +1,27 @@
+/**
+ * A page pool that many threads may use at the same time. Every method of
+ * PagePool is thread safe, and the page list given to allocate or tryAllocate
+ * belongs to the calling thread.
+ */
+public interface ConcurrentPagePool extends PagePool {
+
+    /**
+     * Moves exactly 'numPages' pages from the pool to the page list 'dest' when
+     * that many are free, otherwise moves none. Unlike checking getFreePages
+     * first and then calling allocate, no other thread can take the pages in
+     * between.
+     *
+     * @param numPages Integer
+     * @param dest     List<PageUsage>
+     * @return boolean, false when there were not enough free pages
+     */
+    boolean tryAllocate(int numPages, List<PageUsage> dest);
+
+    /**
+     * Gives back whatever the pool keeps for the calling thread, e.g. a
+     * cache of free pages. A thread that is done with the pool should call
+     * it before it ends; the pool stays usable from the thread afterwards.
+     */
+    default void releaseThread() {
+    }
+}
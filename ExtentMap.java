@@ -0,0 +1,101 @@
+/**
+ * The pages of one program: its extents in ascending order, as a List, with
+ * a running count of the pages they cover. MemSim.putInOrder merges a new
+ * run with the extents it touches, so a program that grows into the pages
+ * right after its last extent still has one extent, and the list never
+ * holds two extents that could be one.
+ *
+ * Shrinking gives back pages from the end, cutting or removing the last
+ * extent, which is O(1) for every extent it touches since removing the last
+ * item of a List moves nothing.
+ */
+public class ExtentMap extends List<PageUsage> {
+
+    private int pages;  // pages covered by all extents
+
+    public ExtentMap() {
+    }
+
+    public ExtentMap(boolean offHeap) {
+        super(offHeap);
+    }
+
+    /**
+     * Gets the number of pages covered by all extents.
+     *
+     * @return Integer
+     */
+    public int getPageCount() {
+        return pages;
+    }
+
+    public void removeAll() {
+        super.removeAll();
+        pages = 0;
+    }
+
+    public void add(int index, int first, int last) {
+        super.add(index, first, last);
+        pages += last - first + 1;
+    }
+
+    public void remove(int index) {
+        pages -= getPages(index);
+        super.remove(index);
+    }
+
+    public void setStart(int index, int value) {
+        pages += getStart(index) - value;
+        super.setStart(index, value);
+    }
+
+    public void setEnd(int index, int value) {
+        pages += value - getEnd(index);
+        super.setEnd(index, value);
+    }
+
+    /**
+     * Gives pages from the end back to 'pool' until no more than 'keep' are
+     * left. The last extent is cut when only part of it goes.
+     *
+     * @param keep Integer, not negative
+     * @param pool PagePool
+     * @return Integer the number of pages given back
+     */
+    public int trimTo(int keep, PagePool pool) {
+        return trim(keep, pool, null);
+    }
+
+    /**
+     * Same as trimTo(int, PagePool), but puts the pages in 'dest' with
+     * MemSim.putInOrder, for frees that are held back and made later.
+     *
+     * @param keep Integer, not negative
+     * @param dest List<PageUsage>
+     * @return Integer the number of pages moved
+     */
+    public int trimTo(int keep, List<PageUsage> dest) {
+        return trim(keep, null, dest);
+    }
+
+    private int trim(int keep, PagePool pool, List<PageUsage> dest) {
+        int freed = 0;
+        while (pages > keep) {
+            int last = size();
+            int end = getEnd(last);
+            int take = Math.min(pages - keep, getPages(last));
+            if (take == getPages(last)) {
+                remove(last);
+            } else {
+                setEnd(last, end - take);
+            }
+            if (pool != null) {
+                pool.free(end - take + 1, end);
+            } else {
+                MemSim.putInOrder(end - take + 1, end, dest);
+            }
+            freed += take;
+        }
+        return freed;
+    }
+}
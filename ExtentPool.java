@@ -0,0 +1,108 @@
+/**
+ * Page pool that keeps free pages as coalesced extents in a FreePageIndex.
+ * Requests are served by taking pages off the front of whichever extents the
+ * allocation policy chooses, so a request may be spread over several extents
+ * but never gets more pages than it asked for.
+ */
+public class ExtentPool implements PagePool {
+
+    private final FreePageIndex index;
+    private final AllocPolicy policy;
+
+    /**
+     * Creates a pool where the pages 'first' through 'last' are free.
+     *
+     * @param first  Integer
+     * @param last   Integer
+     * @param policy AllocPolicy
+     */
+    public ExtentPool(int first, int last, AllocPolicy policy) {
+        this(first, last, policy, false);
+    }
+
+    /**
+     * Creates a pool where the pages 'first' through 'last' are free, with
+     * its extents kept outside the Java heap when 'offHeap' is set.
+     *
+     * @param first   Integer
+     * @param last    Integer
+     * @param policy  AllocPolicy
+     * @param offHeap boolean
+     */
+    public ExtentPool(int first, int last, AllocPolicy policy, boolean offHeap) {
+        this.index = new FreePageIndex(first, last, offHeap);
+        this.policy = policy;
+    }
+
+    public FreePageIndex getIndex() {
+        return index;
+    }
+
+    public int getFreePages() {
+        return index.getFreePages();
+    }
+
+    public int getExtentCount() {
+        return index.size();
+    }
+
+    public int getLargestExtent() {
+        int node = index.largest();
+        return node == FreePageIndex.NULL ? 0 : index.getPages(node);
+    }
+
+    public int allocate(int numPages, List<PageUsage> dest) {
+        int moved = 0;
+
+        while (moved < numPages && !index.isEmpty()) {
+
+            int node = policy.choose(index, numPages - moved);
+            int start = index.getStart(node);
+
+            // Takes the whole extent, or just the pages still needed
+            int ans = Math.min(index.getPages(node), numPages - moved);
+
+            MemSim.putInOrder(start, start + ans - 1, dest);
+            index.takeFront(node, ans);
+            policy.allocated(start, ans);
+            moved += ans;
+        }
+        return moved;
+    }
+
+    public int allocateAligned(int numPages, int alignment) {
+        int node = index.alignedFit(numPages, alignment);
+        if (node == FreePageIndex.NULL) {
+            return -1;
+        }
+        int start = index.getStart(node);
+        int end = index.getEnd(node);
+        int first = (int) (((long) start + alignment - 1) / alignment * alignment);
+
+        // Leaves the pages before and after the run free
+        if (first == start) {
+            index.takeFront(node, numPages);
+        } else {
+            index.takeBack(node, end - first + 1);
+            if (first + numPages <= end) {
+                index.free(first + numPages, end);
+            }
+        }
+        policy.allocated(first, numPages);
+        return first;
+    }
+
+    public void free(int start, int end) {
+        index.free(start, end);
+    }
+
+    public void removeAll() {
+        index.removeAll();
+    }
+
+    public void copyFreeExtents(List<PageUsage> dest) {
+        for (int node = index.first(); node != FreePageIndex.NULL; node = index.next(node)) {
+            dest.add(dest.size() + 1, index.getStart(node), index.getEnd(node));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * First-fit: pages always come from the free extent with the lowest start page.
+ * This is how the simulator has always allocated.
+ */
+public class FirstFit implements AllocPolicy {
+
+    public int choose(FreePageIndex freePages, int numPages) {
+        return freePages.first();
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/**
+ * A fixed set of nodes 0 .. n-1 spread over a few doubly linked lists, with
+ * the links kept in int arrays, as used by the page replacement policies.
+ * A node is in at most one list at a time, and adding, removing and moving
+ * a node are all O(1). The first node of a list is its most recently added.
+ */
+public class FrameLists {
+
+    public static final int NULL = -1;
+
+    private final int next[];
+    private final int prev[];
+    private final int listOf[];   // list each node is in, NULL when in none
+
+    private final int first[];
+    private final int last[];
+    private final int size[];
+
+    /**
+     * Creates 'lists' empty lists for the nodes 0 .. nodes - 1.
+     *
+     * @param nodes Integer
+     * @param lists Integer
+     */
+    public FrameLists(int nodes, int lists) {
+        next = new int[nodes];
+        prev = new int[nodes];
+        listOf = new int[nodes];
+        Arrays.fill(listOf, NULL);
+        first = new int[lists];
+        last = new int[lists];
+        size = new int[lists];
+        Arrays.fill(first, NULL);
+        Arrays.fill(last, NULL);
+    }
+
+    /**
+     * Creates the lists with every node in 'list', node 0 first.
+     *
+     * @param nodes Integer
+     * @param lists Integer
+     * @param list  Integer
+     * @return FrameLists
+     */
+    public static FrameLists allIn(int nodes, int lists, int list) {
+        FrameLists frames = new FrameLists(nodes, lists);
+        for (int node = nodes - 1; node >= 0; node--) {
+            frames.addFirst(list, node);
+        }
+        return frames;
+    }
+
+    public int size(int list) {
+        return size[list];
+    }
+
+    public boolean isEmpty(int list) {
+        return size[list] == 0;
+    }
+
+    public int first(int list) {
+        return first[list];
+    }
+
+    public int last(int list) {
+        return last[list];
+    }
+
+    /**
+     * Gets the list 'node' is in.
+     *
+     * @param node Integer
+     * @return Integer, NULL when in none
+     */
+    public int listOf(int node) {
+        return listOf[node];
+    }
+
+    /**
+     * Puts 'node', which is in no list, at the front of 'list'.
+     *
+     * @param list Integer
+     * @param node Integer
+     */
+    public void addFirst(int list, int node) {
+        prev[node] = NULL;
+        next[node] = first[list];
+        if (first[list] == NULL) {
+            last[list] = node;
+        } else {
+            prev[first[list]] = node;
+        }
+        first[list] = node;
+        listOf[node] = list;
+        size[list]++;
+    }
+
+    /**
+     * Puts 'node', which is in no list, at the back of 'list'.
+     *
+     * @param list Integer
+     * @param node Integer
+     */
+    public void addLast(int list, int node) {
+        next[node] = NULL;
+        prev[node] = last[list];
+        if (last[list] == NULL) {
+            first[list] = node;
+        } else {
+            next[last[list]] = node;
+        }
+        last[list] = node;
+        listOf[node] = list;
+        size[list]++;
+    }
+
+    /**
+     * Takes 'node' out of its list.
+     *
+     * @param node Integer
+     */
+    public void remove(int node) {
+        int list = listOf[node];
+        if (prev[node] == NULL) {
+            first[list] = next[node];
+        } else {
+            next[prev[node]] = next[node];
+        }
+        if (next[node] == NULL) {
+            last[list] = prev[node];
+        } else {
+            prev[next[node]] = prev[node];
+        }
+        listOf[node] = NULL;
+        size[list]--;
+    }
+
+    /**
+     * Moves 'node' from its list, if any, to the front of 'list'.
+     *
+     * @param list Integer
+     * @param node Integer
+     */
+    public void moveToFront(int list, int node) {
+        if (listOf[node] != NULL) {
+            remove(node);
+        }
+        addFirst(list, node);
+    }
+}
@@ -0,0 +1,579 @@
+import java.util.Arrays;
+
+// ****************************************************
+// Ordered index of free page extents, keyed by start page.
+// Extents are nodes of a treap (a binary search tree kept
+// balanced by random priorities) stored in an IntSlab, on
+// or off the Java heap, with one run of ints per field of
+// a node, like parallel arrays, so lookups, inserts and
+// removals are O(log n) and no object is created per extent.
+// Freeing pages merges them with the extents directly
+// before and after, so two free extents never touch and
+// the index only holds as many extents as the real
+// fragmentation of memory requires. The total number of
+// free pages is kept up to date as extents change.
+// Every extent is also linked into a segregated list for
+// its size class (class c holds sizes 2^c .. 2^(c+1)-1),
+// so best-fit and worst-fit lookups only look at one
+// class instead of scanning every extent.
+// Nodes are referred to by their number. A node keeps its
+// number until it is removed from the index, and removed
+// nodes are reused before the slab grows.
+// Ints of the slab are indexed with an int, so an index
+// holds at most MAX_CAPACITY (2^27) extents. A pool of any
+// size up to 2^31 pages works as long as its free pages
+// are not split into more extents than that.
+// ****************************************************
+public class FreePageIndex {
+
+    public static final int INITIAL_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 27;  // FIELDS * MAX_CAPACITY ints fit an int index
+    public static final int NULL = -1;
+    public static final int NUM_CLASSES = 32;
+
+    // Fields of a node, each a run of capacity ints in the slab
+    private static final int START = 0;     // first page of the extent
+    private static final int END = 1;       // last page of the extent
+    private static final int LEFT = 2;      // lower starts, or next unused node
+    private static final int RIGHT = 3;     // higher starts
+    private static final int PRIO = 4;      // heap priority
+    private static final int CLS = 5;       // size class the node is linked into
+    private static final int CLS_NEXT = 6;  // next node of the same class
+    private static final int CLS_PREV = 7;  // previous node of the same class
+    private static final int FIELDS = 8;
+
+    private IntSlab nodes;
+    private int capShift; // log2 of the nodes the slab has room for
+    private int array[];  // the ints of the slab when it is on the heap, else null
+
+    private int clsHead[] = new int[NUM_CLASSES]; // first node of each size class
+    private int clsMask;  // bit c is set when class c is not empty
+
+    private int root;     // top of the tree
+    private int free;     // front of the unused node list
+    private int used;     // nodes ever handed out, unused list holds the rest
+    private int numItems; // number of extents in the index
+    private int freePages; // pages covered by all extents
+    private int seed;     // xorshift state for priorities
+
+    // results of split(), kept in fields to avoid returning pairs
+    private int splitLow;
+    private int splitHigh;
+
+    public FreePageIndex() {
+        this(false);
+    }
+
+    /**
+     * Creates an empty index, keeping its nodes outside the Java heap when
+     * 'offHeap' is set (see IntSlab).
+     *
+     * @param offHeap boolean
+     */
+    public FreePageIndex(boolean offHeap) {
+        nodes = new IntSlab(INITIAL_CAPACITY * FIELDS, offHeap);
+        capShift = Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+        array = nodes.array();
+        root = NULL;
+        free = NULL;
+        used = 0;
+        numItems = 0;
+        freePages = 0;
+        seed = 0x2545F491;
+        Arrays.fill(clsHead, NULL);
+        clsMask = 0;
+    }
+
+    /**
+     * Creates an index holding the single free extent [first, last].
+     *
+     * @param first Integer
+     * @param last  Integer
+     */
+    public FreePageIndex(int first, int last) {
+        this(first, last, false);
+    }
+
+    /**
+     * Creates an index holding the single free extent [first, last], on or
+     * off the Java heap.
+     *
+     * @param first   Integer
+     * @param last    Integer
+     * @param offHeap boolean
+     */
+    public FreePageIndex(int first, int last, boolean offHeap) {
+        this(offHeap);
+        free(first, last);
+    }
+
+    public void removeAll() {   // drop every extent, keep the storage
+        root = NULL;
+        free = NULL;
+        used = 0;
+        numItems = 0;
+        freePages = 0;
+        Arrays.fill(clsHead, NULL);
+        clsMask = 0;
+    }
+
+    public boolean isEmpty() {
+        return numItems == 0;
+    }
+
+    public int size() {
+        return numItems;
+    }
+
+    /**
+     * Gets the number of pages in all extents together.
+     *
+     * @return Integer
+     */
+    public int getFreePages() {
+        return freePages;
+    }
+
+    public int getStart(int node) {
+        return get(node, START);
+    }
+
+    public int getEnd(int node) {
+        return get(node, END);
+    }
+
+    public int getPages(int node) {
+        return get(node, END) - get(node, START) + 1;
+    }
+
+    /**
+     * Gets the node with the lowest start page.
+     *
+     * @return Integer node, NULL when empty
+     */
+    public int first() {
+        int node = root;
+        if (node == NULL) {
+            return NULL;
+        }
+        while (get(node, LEFT) != NULL) {
+            node = get(node, LEFT);
+        }
+        return node;
+    }
+
+    /**
+     * Gets the node following 'node' in page order.
+     *
+     * @param node Integer
+     * @return Integer node, NULL when 'node' is the last one
+     */
+    public int next(int node) {
+        return ceiling(get(node, START) + 1);
+    }
+
+    /**
+     * Gets the node with the greatest start page that is <= 'page'.
+     *
+     * @param page Integer
+     * @return Integer node, NULL when there is none
+     */
+    public int floor(int page) {
+        int node = root;
+        int best = NULL;
+        while (node != NULL) {
+            if (get(node, START) <= page) {
+                best = node;
+                node = get(node, RIGHT);
+            } else {
+                node = get(node, LEFT);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the node with the lowest start page that is >= 'page'.
+     *
+     * @param page Integer
+     * @return Integer node, NULL when there is none
+     */
+    public int ceiling(int page) {
+        int node = root;
+        int best = NULL;
+        while (node != NULL) {
+            if (get(node, START) >= page) {
+                best = node;
+                node = get(node, LEFT);
+            } else {
+                node = get(node, RIGHT);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the smallest extent with at least 'numPages' pages. When no
+     * extent is that large, the largest extent is returned instead.
+     * Only the size class of the answer is scanned.
+     *
+     * @param numPages Integer
+     * @return Integer node, NULL when empty
+     */
+    public int bestFit(int numPages) {
+        int c = sizeClass(numPages);
+
+        // The own class may hold extents both smaller and larger than numPages
+        int best = NULL;
+        for (int node = clsHead[c]; node != NULL; node = get(node, CLS_NEXT)) {
+            int pages = getPages(node);
+            if (pages >= numPages && (best == NULL || pages < getPages(best))) {
+                best = node;
+                if (pages == numPages) {
+                    break;
+                }
+            }
+        }
+        if (best != NULL) {
+            return best;
+        }
+
+        // Every extent of a higher class fits, the lowest one has the best
+        int higher = c + 1 < NUM_CLASSES ? clsMask & (-1 << (c + 1)) : 0;
+        if (higher != 0) {
+            return smallestOf(Integer.numberOfTrailingZeros(higher));
+        }
+        return largest();
+    }
+
+    /**
+     * Gets an extent that holds 'numPages' pages starting at a multiple of
+     * 'alignment'. Every extent of a size class whose smallest size is
+     * numPages + alignment - 1 or more fits wherever it starts, so only the
+     * classes below that are scanned.
+     *
+     * @param numPages  Integer
+     * @param alignment Integer
+     * @return Integer node, NULL when there is none
+     */
+    public int alignedFit(int numPages, int alignment) {
+        long need = (long) numPages + alignment - 1;
+        for (int c = sizeClass(numPages); c < NUM_CLASSES; c++) {
+            if ((clsMask & (1 << c)) == 0) {
+                continue;
+            }
+            if ((1L << c) >= need) {
+                return clsHead[c];
+            }
+            for (int node = clsHead[c]; node != NULL; node = get(node, CLS_NEXT)) {
+                long first = ((long) get(node, START) + alignment - 1) / alignment * alignment;
+                if (first + numPages - 1 <= get(node, END)) {
+                    return node;
+                }
+            }
+        }
+        return NULL;
+    }
+
+    /**
+     * Gets the extent with the most pages.
+     *
+     * @return Integer node, NULL when empty
+     */
+    public int largest() {
+        if (clsMask == 0) {
+            return NULL;
+        }
+        int c = 31 - Integer.numberOfLeadingZeros(clsMask);
+        int best = clsHead[c];
+        for (int node = get(best, CLS_NEXT); node != NULL; node = get(node, CLS_NEXT)) {
+            if (getPages(node) > getPages(best)) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the extent with the fewest pages in size class 'c'.
+     *
+     * @param c Integer
+     * @return Integer node
+     */
+    private int smallestOf(int c) {
+        int best = clsHead[c];
+        for (int node = get(best, CLS_NEXT); node != NULL; node = get(node, CLS_NEXT)) {
+            if (getPages(node) < getPages(best)) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the pages 'first' through 'last' to the index, merging them
+     * with any free extent they touch or overlap.
+     *
+     * @param first Integer
+     * @param last  Integer
+     */
+    public void free(int first, int last) {
+        int node = floor(first);
+
+        if (node != NULL && get(node, END) >= first - 1) {
+            // Extends the extent right before (or around) the freed pages
+            if (get(node, END) < last) {
+                freePages += last - get(node, END);
+                set(node, END, last);
+                reclass(node);
+            }
+        } else {
+            node = insert(first, last);
+        }
+
+        // Swallows the extents that now touch the end of 'node'
+        int after = ceiling(get(node, START) + 1);
+        while (after != NULL && get(after, START) <= get(node, END) + 1) {
+            int afterEnd = get(after, END);
+            remove(after);
+            if (afterEnd > get(node, END)) {
+                freePages += afterEnd - get(node, END);
+                set(node, END, afterEnd);
+                reclass(node);
+            }
+            after = ceiling(get(node, START) + 1);
+        }
+    }
+
+    /**
+     * Takes 'numPages' pages off the front of the extent 'node'. When that
+     * uses up the whole extent the node is removed from the index.
+     *
+     * Pre-condition: 1 <= numPages <= getPages(node)
+     *
+     * @param node     Integer
+     * @param numPages Integer
+     */
+    public void takeFront(int node, int numPages) {
+        if (numPages == getPages(node)) {
+            remove(node);
+        } else {
+            // Moving the start up keeps the node between its neighbours
+            set(node, START, get(node, START) + numPages);
+            freePages -= numPages;
+            reclass(node);
+        }
+    }
+
+    /**
+     * Takes 'numPages' pages off the back of the extent 'node'. When that
+     * uses up the whole extent the node is removed from the index.
+     *
+     * Pre-condition: 1 <= numPages <= getPages(node)
+     *
+     * @param node     Integer
+     * @param numPages Integer
+     */
+    public void takeBack(int node, int numPages) {
+        if (numPages == getPages(node)) {
+            remove(node);
+        } else {
+            set(node, END, get(node, END) - numPages);
+            freePages -= numPages;
+            reclass(node);
+        }
+    }
+
+    /**
+     * Removes the extent 'node' from the index.
+     *
+     * @param node Integer
+     */
+    public void remove(int node) {
+        int key = get(node, START);
+        split(root, key);
+        int low = splitLow;
+        split(splitHigh, key + 1);
+        root = merge(low, splitHigh);
+        unlinkClass(node);
+
+        set(node, LEFT, free);
+        free = node;
+        numItems--;
+        freePages -= getPages(node);
+    }
+
+    /**
+     * Adds a new extent, which must not touch any extent in the index.
+     *
+     * @param first Integer
+     * @param last  Integer
+     * @return Integer the new node
+     */
+    private int insert(int first, int last) {
+        int node = newNode();
+        set(node, START, first);
+        set(node, END, last);
+        set(node, LEFT, NULL);
+        set(node, RIGHT, NULL);
+
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        set(node, PRIO, seed);
+
+        split(root, first);
+        root = merge(merge(splitLow, node), splitHigh);
+        linkClass(node);
+        numItems++;
+        freePages += last - first + 1;
+        return node;
+    }
+
+    /**
+     * Gets the size class of an extent of 'numPages' pages.
+     *
+     * @param numPages Integer
+     * @return Integer
+     */
+    private static int sizeClass(int numPages) {
+        return 31 - Integer.numberOfLeadingZeros(numPages);
+    }
+
+    /**
+     * Adds 'node' to the front of the list for its size class.
+     *
+     * @param node Integer
+     */
+    private void linkClass(int node) {
+        int c = sizeClass(getPages(node));
+        set(node, CLS, c);
+        set(node, CLS_PREV, NULL);
+        set(node, CLS_NEXT, clsHead[c]);
+        if (clsHead[c] != NULL) {
+            set(clsHead[c], CLS_PREV, node);
+        }
+        clsHead[c] = node;
+        clsMask |= 1 << c;
+    }
+
+    /**
+     * Takes 'node' out of the list for its size class.
+     *
+     * @param node Integer
+     */
+    private void unlinkClass(int node) {
+        int c = get(node, CLS);
+        if (get(node, CLS_PREV) != NULL) {
+            set(get(node, CLS_PREV), CLS_NEXT, get(node, CLS_NEXT));
+        } else {
+            clsHead[c] = get(node, CLS_NEXT);
+            if (clsHead[c] == NULL) {
+                clsMask &= ~(1 << c);
+            }
+        }
+        if (get(node, CLS_NEXT) != NULL) {
+            set(get(node, CLS_NEXT), CLS_PREV, get(node, CLS_PREV));
+        }
+    }
+
+    /**
+     * Moves 'node' to another size class list after its size changed.
+     *
+     * @param node Integer
+     */
+    private void reclass(int node) {
+        if (get(node, CLS) != sizeClass(getPages(node))) {
+            unlinkClass(node);
+            linkClass(node);
+        }
+    }
+
+    /**
+     * Splits the tree 't' into the nodes with start < key (splitLow)
+     * and start >= key (splitHigh).
+     *
+     * @param t   Integer
+     * @param key Integer
+     */
+    private void split(int t, int key) {
+        if (t == NULL) {
+            splitLow = NULL;
+            splitHigh = NULL;
+        } else if (get(t, START) < key) {
+            split(get(t, RIGHT), key);
+            set(t, RIGHT, splitLow);
+            splitLow = t;
+        } else {
+            split(get(t, LEFT), key);
+            set(t, LEFT, splitHigh);
+            splitHigh = t;
+        }
+    }
+
+    /**
+     * Joins the trees 'a' and 'b', where every start in 'a' is
+     * below every start in 'b'.
+     *
+     * @param a Integer
+     * @param b Integer
+     * @return Integer root of the joined tree
+     */
+    private int merge(int a, int b) {
+        if (a == NULL) {
+            return b;
+        }
+        if (b == NULL) {
+            return a;
+        }
+        if (get(a, PRIO) > get(b, PRIO)) {
+            set(a, RIGHT, merge(get(a, RIGHT), b));
+            return a;
+        }
+        set(b, LEFT, merge(a, get(b, LEFT)));
+        return b;
+    }
+
+    /**
+     * Hands out an unused node, growing the slab when all are taken.
+     *
+     * @return Integer
+     * @throws IllegalStateException when all MAX_CAPACITY nodes are taken
+     */
+    private int newNode() {
+        if (free != NULL) {
+            int node = free;
+            free = get(node, LEFT);
+            return node;
+        }
+        if (used == 1 << capShift) {
+            if (used == MAX_CAPACITY) {
+                throw new IllegalStateException("More than " + MAX_CAPACITY + " free extents");
+            }
+            IntSlab bigger = new IntSlab(nodes.length() * 2, nodes.isOffHeap());
+            for (int field = 0; field < FIELDS; field++) {
+                for (int node = 0; node < used; node++) {
+                    bigger.set((field << (capShift + 1)) + node, get(node, field));
+                }
+            }
+            nodes = bigger;
+            array = bigger.array();
+            capShift++;
+        }
+        return used++;
+    }
+
+    private int get(int node, int field) {
+        int i = (field << capShift) + node;
+        return array != null ? array[i] : nodes.get(i);
+    }
+
+    private void set(int node, int field, int value) {
+        int i = (field << capShift) + node;
+        if (array != null) {
+            array[i] = value;
+        } else {
+            nodes.set(i, value);
+        }
+    }
+}
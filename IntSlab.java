@@ -0,0 +1,91 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed number of ints, for the extents of a List or a FreePageIndex.
+ * They are kept in an int array on the Java heap, or for off-heap storage
+ * (-storage offheap) in direct ByteBuffers, which live outside of it. Off
+ * the heap the garbage collector never copies or scans the extents, and
+ * the heap only holds this object and its buffers however many extents
+ * there are, so it stays small and flat while the simulation grows.
+ *
+ * Direct buffers are limited to 2 GB, so off the heap the ints are split
+ * into chunks of CHUNK ints; an index selects its chunk with a shift.
+ * A slab never changes its length: List and FreePageIndex grow by copying
+ * into one twice as long, like they did with arrays.
+ */
+public final class IntSlab {
+
+    public static final int CHUNK_BITS = 24;
+    public static final int CHUNK = 1 << CHUNK_BITS;
+
+    private final int heap[];           // null when off the heap
+    private final ByteBuffer chunks[];  // null when on the heap
+    private final int length;
+
+    /**
+     * Creates a slab of 'length' ints, all 0.
+     *
+     * @param length  Integer
+     * @param offHeap boolean, whether to keep the ints outside the Java heap
+     */
+    public IntSlab(int length, boolean offHeap) {
+        this.length = length;
+        if (offHeap) {
+            heap = null;
+            chunks = new ByteBuffer[(int) (((long) length + CHUNK - 1) >>> CHUNK_BITS)];
+            for (int c = 0; c < chunks.length; c++) {
+                int ints = Math.min(CHUNK, length - (c << CHUNK_BITS));
+                chunks[c] = ByteBuffer.allocateDirect(ints << 2).order(ByteOrder.nativeOrder());
+            }
+        } else {
+            heap = new int[length];
+            chunks = null;
+        }
+    }
+
+    public boolean isOffHeap() {
+        return heap == null;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gets the array of a slab on the heap, so that the hot paths of List
+     * and FreePageIndex can index it directly.
+     *
+     * @return int[], null when off the heap
+     */
+    public int[] array() {
+        return heap;
+    }
+
+    /**
+     * Gets int 'i'.
+     *
+     * @param i Integer, 0 <= i < length
+     * @return Integer
+     */
+    public int get(int i) {
+        if (heap != null) {
+            return heap[i];
+        }
+        return chunks[i >>> CHUNK_BITS].getInt((i & (CHUNK - 1)) << 2);
+    }
+
+    /**
+     * Sets int 'i'.
+     *
+     * @param i     Integer, 0 <= i < length
+     * @param value Integer
+     */
+    public void set(int i, int value) {
+        if (heap != null) {
+            heap[i] = value;
+        } else {
+            chunks[i >>> CHUNK_BITS].putInt((i & (CHUNK - 1)) << 2, value);
+        }
+    }
+}
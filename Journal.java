@@ -0,0 +1,226 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal of the operations that change the state of a MemSim:
+ * every successful 'i', 'g', 's' and 't', and every 'd' and 'r', including
+ * the compactions made for -compactAt. MemSim numbers these operations 1, 2,
+ * 3, ... and a snapshot records how many it holds, so after a crash the
+ * latest snapshot plus the operations logged after it give back the state
+ * (see MemSim.recover). A 'b 0 <n>' is followed by n operations that a batch
+ * made with one pass over the pool, and counts as an operation itself.
+ *
+ * The journal is a directory of segment files journal-<base>.mjnl, where
+ * base is the number of operations before the first one in the segment. A
+ * new segment is started at every checkpoint and every time a simulator
+ * starts journaling, so the segments after the latest snapshot are short.
+ *
+ * A segment starts with a 16 byte header of big-endian ints: the magic
+ * number "MSJN", the format version, and base as a long. Records are the
+ * same as in a binary trace (see BinaryTraceWriter): the opcode as one
+ * byte, then prog_id and size as zigzag varints. They are collected in
+ * memory and written a group at a time, as one frame: the length of the
+ * records in bytes, their CRC-32C, then the records. A frame is forced to
+ * the disk before the next one is started, so one write and one sync cover
+ * a whole group of operations, and a frame cut short by a crash is found by
+ * its checksum and ignored.
+ */
+public class Journal implements Closeable {
+
+    public static final int MAGIC = 0x4D534A4E;  // "MSJN"
+    public static final int VERSION = 2;
+
+    // Bytes before the records of a frame: length and checksum
+    public static final int FRAME_HEADER = 8;
+
+    // Records collected before a frame is written, at most
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path dir;
+    private final int group;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32C crc = new CRC32C();
+
+    private FileChannel out;
+    private long base;    // operations before the segment being written
+    private int records;  // records in the frame being collected
+
+    /**
+     * Starts a journal in the directory 'dir' (created when missing) with
+     * a new segment after 'base' operations.
+     *
+     * @param dir   Path
+     * @param base  Long
+     * @param group Integer, records written and synced at a time
+     * @throws IOException when the segment cannot be created
+     */
+    public Journal(Path dir, long base, int group) throws IOException {
+        this.dir = dir;
+        this.group = group;
+        Files.createDirectories(dir);
+        startSegment(base);
+    }
+
+    /**
+     * Gets the file of the segment that starts after 'base' operations.
+     *
+     * @param dir  Path
+     * @param base Long
+     * @return Path
+     */
+    public static Path segmentPath(Path dir, long base) {
+        return dir.resolve("journal-" + base + ".mjnl");
+    }
+
+    /**
+     * Gets the base of every segment in the directory 'dir', in ascending order.
+     *
+     * @param dir Path
+     * @return long[], empty when the directory does not exist
+     * @throws IOException when the directory cannot be read
+     */
+    public static long[] segments(Path dir) throws IOException {
+        long bases[] = new long[16];
+        int count = 0;
+        if (!Files.isDirectory(dir)) {
+            return new long[0];
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*.mjnl")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base;
+                try {
+                    base = Long.parseLong(name.substring("journal-".length(), name.length() - ".mjnl".length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (count == bases.length) {
+                    bases = Arrays.copyOf(bases, count * 2);
+                }
+                bases[count++] = base;
+            }
+        }
+        bases = Arrays.copyOf(bases, count);
+        Arrays.sort(bases);
+        return bases;
+    }
+
+    /**
+     * Adds one operation. It is written out, with the rest of its group,
+     * once 'group' records have been collected.
+     *
+     * @param opcode Char
+     * @param progID Integer
+     * @param size   Integer
+     * @throws UncheckedIOException when writing fails
+     */
+    public void append(char opcode, int progID, int size) {
+        // Longest record: 1 byte opcode and two 5 byte varints
+        if (buf.remaining() < 11) {
+            flush();
+        }
+        buf.put((byte) opcode);
+        putVarint(progID);
+        putVarint(size);
+        if (++records >= group) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the collected records as one frame and forces it to the disk.
+     *
+     * @throws UncheckedIOException when writing fails
+     */
+    public void flush() {
+        if (records == 0) {
+            return;
+        }
+        try {
+            buf.flip();
+            crc.reset();
+            crc.update(buf.duplicate());
+
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            header.putInt(buf.remaining());
+            header.putInt((int) crc.getValue());
+            header.flip();
+            ByteBuffer frame[] = {header, buf};
+            while (buf.hasRemaining()) {
+                out.write(frame);
+            }
+            out.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buf.clear();
+        records = 0;
+    }
+
+    /**
+     * Writes what has been collected and starts a new segment after 'base'
+     * operations, e.g. once a snapshot with that many has been saved. When
+     * nothing was logged since the current segment was started, it is kept.
+     *
+     * @param base Long
+     * @throws IOException when the new segment cannot be created
+     */
+    public void roll(long base) throws IOException {
+        flush();
+        if (base == this.base) {
+            return;
+        }
+        out.close();
+        startSegment(base);
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * Creates the segment file for 'base' and writes its header. An existing
+     * segment is never replaced, since it may hold operations of another run.
+     *
+     * @param base Long
+     * @throws IOException when the file exists or cannot be written
+     */
+    private void startSegment(long base) throws IOException {
+        out = FileChannel.open(segmentPath(dir, base), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.base = base;
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(base);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+        out.force(true);
+    }
+
+    /**
+     * Adds 'value' to the buffer as a zigzag varint.
+     *
+     * @param value Integer
+     */
+    private void putVarint(int value) {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+}
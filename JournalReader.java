@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the operations of one journal segment written by Journal. See
+ * Journal for the format. Reading stops at the end of the last whole
+ * frame: a frame that is cut short or fails its checksum, as left by a
+ * crash while it was written, ends the segment.
+ */
+public class JournalReader implements CommandSource {
+
+    private final FileChannel in;
+    private final long base;
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer header = ByteBuffer.allocate(Journal.FRAME_HEADER);
+    private ByteBuffer frame = ByteBuffer.allocate(4096);
+
+    private long read;     // operations read so far
+    private boolean torn;  // the segment ends with a damaged frame
+
+    private char opcode;
+    private int progID;
+    private int size;
+
+    /**
+     * Opens the segment file 'path' and reads its header.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be read or is not a journal segment
+     */
+    public JournalReader(Path path) throws IOException {
+        this.in = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer start = ByteBuffer.allocate(16);
+        if (!readFully(start) || start.getInt(0) != Journal.MAGIC) {
+            in.close();
+            throw new IOException("Not a journal segment: " + path);
+        }
+        if (start.getInt(4) != Journal.VERSION) {
+            in.close();
+            throw new IOException("Unsupported journal version " + start.getInt(4) + ": " + path);
+        }
+        this.base = start.getLong(8);
+        frame.flip();
+    }
+
+    /**
+     * Gets the number of operations before the first one of the segment.
+     *
+     * @return Long
+     */
+    public long getBase() {
+        return base;
+    }
+
+    /**
+     * Gets the number of the operation read last, counted from the start
+     * of the journal.
+     *
+     * @return Long
+     */
+    public long getSequence() {
+        return base + read;
+    }
+
+    /**
+     * Checks whether the segment ended with a frame that was cut short or
+     * damaged. Only valid once next() has returned false.
+     *
+     * @return boolean
+     */
+    public boolean isTorn() {
+        return torn;
+    }
+
+    public char getOpcode() {
+        return opcode;
+    }
+
+    public int getProgID() {
+        return progID;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the next operation.
+     *
+     * @return boolean, false at the end of the last whole frame
+     * @throws IOException when reading fails or a checked frame does not decode
+     */
+    public boolean next() throws IOException {
+        if (!frame.hasRemaining() && !nextFrame()) {
+            return false;
+        }
+        opcode = (char) (frame.get() & 0xFF);
+        progID = readVarint();
+        size = readVarint();
+        read++;
+        return true;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads and checks the next frame.
+     *
+     * @return boolean, false when there is no whole frame left
+     * @throws IOException when reading fails
+     */
+    private boolean nextFrame() throws IOException {
+        header.clear();
+        if (!readFully(header)) {
+            torn = header.position() > 0;
+            return false;
+        }
+        int length = header.getInt(0);
+        if (length <= 0 || length > Journal.BUFFER_SIZE) {
+            torn = true;
+            return false;
+        }
+        if (frame.capacity() < length) {
+            frame = ByteBuffer.allocate(length);
+        }
+        frame.clear().limit(length);
+        if (!readFully(frame)) {
+            torn = true;
+            return false;
+        }
+        frame.flip();
+        crc.reset();
+        crc.update(frame.duplicate());
+        if ((int) crc.getValue() != header.getInt(4)) {
+            torn = true;
+            frame.limit(0);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fills the rest of 'buf' from the file.
+     *
+     * @param buf ByteBuffer
+     * @return boolean, false when the file ends first
+     * @throws IOException when reading fails
+     */
+    private boolean readFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a zigzag-encoded varint of the current frame.
+     *
+     * @return Integer
+     * @throws IOException when the frame ends inside it
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!frame.hasRemaining()) {
+                throw new IOException("Journal record cut short");
+            }
+            int b = frame.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+    }
+}
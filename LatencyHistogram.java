@@ -0,0 +1,106 @@
+/**
+ * Histogram of latencies in nanoseconds with one bucket per power of two:
+ * bucket k counts the latencies from 2^(k-1) up to 2^k - 1 (bucket 0 counts
+ * zero). Recording is a leading-zeros count and two array updates, so it can
+ * be done on every command. Percentiles are the upper end of their bucket,
+ * so they are at most a factor of two too high.
+ */
+public class LatencyHistogram {
+
+    public static final int BUCKETS = 64;
+
+    private final long counts[] = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * Counts one latency.
+     *
+     * @param nanos Long, not negative
+     */
+    public void record(long nanos) {
+        counts[64 - Long.numberOfLeadingZeros(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return Long nanoseconds, 0 when nothing was recorded
+     */
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Gets the latency that 'fraction' of all latencies are at most.
+     *
+     * @param fraction Double, from 0 to 1
+     * @return Long nanoseconds, the upper end of the bucket it falls in
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += counts[k];
+            if (seen >= rank) {
+                return k == 0 ? 0 : Math.min(max, (1L << k) - 1);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Makes a copy, e.g. to take the difference with later on.
+     *
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+        copy.count = count;
+        copy.total = total;
+        copy.max = max;
+        return copy;
+    }
+
+    /**
+     * Gets the latencies recorded since 'earlier', a copy of this histogram.
+     * Its maximum is the upper end of the highest bucket used since then,
+     * as the exact value is not kept per interval.
+     *
+     * @param earlier LatencyHistogram
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram since(LatencyHistogram earlier) {
+        LatencyHistogram diff = new LatencyHistogram();
+        for (int k = 0; k < BUCKETS; k++) {
+            diff.counts[k] = counts[k] - earlier.counts[k];
+        }
+        diff.count = count - earlier.count;
+        diff.total = total - earlier.total;
+        for (int k = BUCKETS - 1; k > 0; k--) {
+            if (diff.counts[k] > 0) {
+                diff.max = Math.min(max, (1L << k) - 1);
+                break;
+            }
+        }
+        return diff;
+    }
+}
@@ -1,46 +1,46 @@
 // ****************************************************
-// Reference-based implementation of ADT list using arrays.
-// Due to the limitations with array of generics, the
-// "data type" for the list items is fixed to be of type
-// PageUsage.  Any program using this class must specify
-// <PageUsage> as the value for the type parameter.
+// Array-based implementation of ADT list of page extents.
+// Instead of a PageUsage object per node, the start and
+// end page of every item are kept as ints in an IntSlab,
+// on or off the Java heap, starts in its first half and
+// ends in its second, used as a circular buffer which
+// doubles in size whenever it fills up. Positions are 1-based as before,
+// any position is reached in O(1), and adding or removing
+// at either end of the list is O(1).
+// The type parameter is only kept so that declarations of
+// List<PageUsage> keep compiling; items are always extents.
 // ****************************************************
 public class List<T> {
-    // reference to linked list of items
 
-    public static final int MAX_LIST = 20;
+    public static final int INITIAL_CAPACITY = 16;
     public static final int NULL = -1;
 
-    private PageUsage item[] = new PageUsage[MAX_LIST];  // data
-    private int next[] = new int[MAX_LIST];       // pointer to next item
+    // First page of each item at its slot, last page at capacity + slot
+    private IntSlab items;
+    private int array[];  // the ints of items when it is on the heap, else null
 
-    private int head;     // pointer to front of list
-    private int free;     // pointer to front of free list
+    private int mask = INITIAL_CAPACITY - 1; // capacity - 1, capacity is a power of two
+    private int head;     // array slot holding logical position 1
     private int numItems; // number of items in list
 
-// Constructor must initialize used list to empty and free list to 
-// all available nodes.
+// Constructor must initialize the list to empty.
 
     public List() {
-        for (int index = 0; index < MAX_LIST - 1; index++)
-            next[index] = index + 1;
+        this(false);
+    }
 
-        next[MAX_LIST - 1] = NULL;
+    // Keeps the items outside the Java heap when offHeap is set (see IntSlab)
 
+    public List(boolean offHeap) {
+        items = new IntSlab(2 * INITIAL_CAPACITY, offHeap);
+        array = items.array();
         numItems = 0;
-        head = NULL;
-        free = 0;
+        head = 0;
     }
 
-    public void removeAll() {   // reinitialize all nodes to free
-        for (int index = 0; index < MAX_LIST - 1; index++)
-            next[index] = index + 1;
-
-        next[MAX_LIST - 1] = NULL;
-
+    public void removeAll() {   // forget every item, keep the storage
         numItems = 0;
-        head = NULL;
-        free = 0;
+        head = 0;
     }
 
     public boolean isEmpty() {
@@ -52,13 +52,12 @@ public class List<T> {
     }
 
     /**
-     * Locates a specified node in a linked list.
+     * Locates a specified item in the circular buffer.
      *
      * Pre-condition: index is the number of the desired
-     * node. Assumes that 1 <= index <= numItems
+     * item. Assumes that 1 <= index <= numItems + 1
      *
-     * Post-condition: Returns a reference to the desired
-     * node.
+     * Post-condition: Returns the array slot of the item.
      *
      * Helper function.
      *
@@ -66,60 +65,117 @@ public class List<T> {
      * @return
      */
     private int find(int index) {
-        int ptr = head;
-        for (int i = 2; i <= index; i++) {
-            ptr = next[ptr];
-        }
-        return ptr;
+        return (head + index - 1) & mask;
     }
 
     /**
-     * Gets a PageUsage object at 'index'
+     * Gets a copy of the item at 'index' as a PageUsage object.
+     * Changing the returned object does not change the list,
+     * use setStart/setEnd for that.
      *
      * @param index Integer
      * @return PageUsage
      */
     public PageUsage get(int index) {
         if (!isEmpty()) {
-            return item[find(index)];
+            int slot = find(index);
+            return new PageUsage(load(slot), load(mask + 1 + slot));
         }
         return null;
     }
 
+    /**
+     * Gets the first page of the item at 'index'
+     *
+     * @param index Integer
+     * @return Integer
+     */
+    public int getStart(int index) {
+        return load(find(index));
+    }
+
+    /**
+     * Gets the last page of the item at 'index'
+     *
+     * @param index Integer
+     * @return Integer
+     */
+    public int getEnd(int index) {
+        return load(mask + 1 + find(index));
+    }
+
+    /**
+     * Gets the number of pages covered by the item at 'index'
+     *
+     * @param index Integer
+     * @return Integer
+     */
+    public int getPages(int index) {
+        int slot = find(index);
+        return load(mask + 1 + slot) - load(slot) + 1;
+    }
+
+    /**
+     * Sets the first page of the item at 'index'
+     *
+     * @param index Integer
+     * @param value Integer
+     */
+    public void setStart(int index, int value) {
+        store(find(index), value);
+    }
+
+    /**
+     * Sets the last page of the item at 'index'
+     *
+     * @param index Integer
+     * @param value Integer
+     */
+    public void setEnd(int index, int value) {
+        store(mask + 1 + find(index), value);
+    }
+
     /**
      * Adds a PageUsage object at a particular index
-     * in the array 'item'.
+     * in the list. Only its start and end are stored.
      *
      * @param index   Integer
      * @param newItem PageUsage
      */
     public void add(int index, PageUsage newItem) {
-        // inserting at the beginning of the list
-        if (index == 1) {
-
-            int tempOldHead = head;
-            head = free;
-            free = next[free];
-            next[head] = tempOldHead;
-            item[head] = newItem;
-
-        } else if (index == size() + 1) { // inserting at the end
-
-            int tmp = find(index-1); // finds get the
-            next[tmp] = free;
-            item[free] = newItem;
-            free = next[free];
-            next[next[tmp]] = NULL;
-
-        } else { // inserting at the middle
-            int pos = find(index-1);
-            int pos2 = next[pos];
-
-            next[pos] = free;
-            free = next[free];
-            next[next[pos]] = pos2;
-            item[next[pos]] = newItem;
+        add(index, newItem.getStart(), newItem.getEnd());
+    }
+
+    /**
+     * Adds the extent [first, last] at a particular index
+     * in the list. Items before or after 'index' are shifted
+     * by one slot, whichever side is shorter.
+     *
+     * @param index Integer
+     * @param first Integer
+     * @param last  Integer
+     */
+    public void add(int index, int first, int last) {
+        if (2 * numItems == items.length()) {
+            grow();
+        }
+
+        if (index - 1 < numItems - index + 1) {
+            // inserting in the front half, move earlier items one slot back
+            head = (head - 1) & mask;
+            for (int i = 1; i < index; i++) {
+                move(find(i + 1), find(i));
+            }
+        } else {
+            // inserting in the back half, move later items one slot forward
+            for (int i = numItems + 1; i > index; i--) {
+                move(find(i - 1), find(i));
+            }
         }
+
+        int slot = find(index);
+        store(slot, first);
+        store(mask + 1 + slot, last);
         this.numItems++;
     }
 
@@ -130,24 +186,61 @@ public class List<T> {
      */
     public void remove(int index) {
 
-        // Remove from the beginning
-        if (index == 1) {
-            // Save current 'next' pointer
-            int tmp = next[head];
-
-            next[head] = free;
-            free = head;
-            head = tmp;
-            item[free] = null;
+        if (index - 1 < numItems - index) {
+            // Remove from the front half, close the gap from the front
+            for (int i = index; i > 1; i--) {
+                move(find(i - 1), find(i));
+            }
+            head = (head + 1) & mask;
         } else {
-            int prev = find(index - 1);
-            int curr = next[prev];
-            int nxt = next[curr];
-            next[prev] = nxt;
-            item[curr] = null;
-            next[curr] = free;
-            free = curr;
+            // Remove from the back half, close the gap from the back
+            for (int i = index; i < numItems; i++) {
+                move(find(i + 1), find(i));
+            }
         }
         this.numItems--;
     }
-}
\ No newline at end of file
+
+    /**
+     * Copies the item in array slot 'from' to slot 'to'.
+     *
+     * @param from Integer
+     * @param to   Integer
+     */
+    private void move(int from, int to) {
+        store(to, load(from));
+        store(mask + 1 + to, load(mask + 1 + from));
+    }
+
+    /**
+     * Doubles the capacity of the buffer, unrolling the items
+     * so that position 1 lands in slot 0 again.
+     */
+    private void grow() {
+        int capacity = items.length();
+        IntSlab bigger = new IntSlab(2 * capacity, items.isOffHeap());
+
+        for (int i = 1; i <= numItems; i++) {
+            int slot = find(i);
+            bigger.set(i - 1, load(slot));
+            bigger.set(capacity + i - 1, load(mask + 1 + slot));
+        }
+
+        items = bigger;
+        array = bigger.array();
+        mask = capacity - 1;
+        head = 0;
+    }
+
+    private int load(int i) {
+        return array != null ? array[i] : items.get(i);
+    }
+
+    private void store(int i, int value) {
+        if (array != null) {
+            array[i] = value;
+        } else {
+            items.set(i, value);
+        }
+    }
+}
@@ -22,6 +22,56 @@ public class ListTest {
 
             printList(L);
 
+            System.out.printf("Adding 1000 entries, alternating front and back. Size should be 1002\n");
+            for (int i = 1; i <= 500; i++) {
+                L.add(1, new PageUsage(-i, -i));
+                L.add(L.size()+1, new PageUsage(30 + i, 30 + i));
+            }
+            System.out.printf("  size: %d, first: %d, last: %d\n", L.size(),
+                    L.getStart(1), L.getStart(L.size()));
+
+            System.out.printf("Removing the middle entries 20 and 30. Entries should stay in order\n");
+            L.remove(501);
+            L.remove(501);
+            boolean ordered = true;
+            for (int i = 2; i <= L.size(); i++)
+                ordered &= L.getStart(i - 1) < L.getStart(i);
+            System.out.printf("  size: %d, in order: %b\n", L.size(), ordered);
+
+            System.out.printf("Putting pages 10-19, 30-39, 20-29 and 40-49 in order. Should be one extent 10 to 49\n");
+            ExtentMap M = new ExtentMap();
+            MemSim.putInOrder(10, 19, M);
+            MemSim.putInOrder(30, 39, M);
+            MemSim.putInOrder(20, 29, M);
+            MemSim.putInOrder(40, 49, M);
+            System.out.printf("  extents: %d, first: %d, last: %d, pages: %d\n", M.size(),
+                    M.getStart(1), M.getEnd(M.size()), M.getPageCount());
+
+            System.out.printf("Adding pages 60-69 and trimming to 45 pages. Should be 10 to 49, 60 to 64\n");
+            MemSim.putInOrder(60, 69, M);
+            ExtentPool pool = new ExtentPool(0, 99, new FirstFit());
+            pool.allocate(100, new List<PageUsage>());
+            int freed = M.trimTo(45, pool);
+            System.out.printf("  extents: %d, last: %d to %d, pages: %d, freed: %d, free in pool: %d\n", M.size(),
+                    M.getStart(M.size()), M.getEnd(M.size()), M.getPageCount(), freed, pool.getFreePages());
+
+            System.out.printf("Repeating the adds and removes off the heap. Should match the list on the heap\n");
+            List<PageUsage> H = new List<PageUsage>();
+            List<PageUsage> O = new List<PageUsage>(true);
+            boolean same = true;
+            for (int i = 1; i <= 3000; i++) {
+                int at = 1 + (i * 7919) % (H.size() + 1);
+                H.add(at, i, i + 1);
+                O.add(at, i, i + 1);
+                if (i % 3 == 0) {
+                    H.remove(1 + i % H.size());
+                    O.remove(1 + i % O.size());
+                }
+            }
+            for (int i = 1; i <= H.size(); i++)
+                same &= H.getStart(i) == O.getStart(i) && H.getEnd(i) == O.getEnd(i);
+            System.out.printf("  size: %d, off heap size: %d, same: %b\n", H.size(), O.size(), same);
+
         }
 
         // Prints the current entries of a list
@@ -0,0 +1,29 @@
+/**
+ * Least recently used: the frames in use are kept in order of their last
+ * access, and the one at the end is evicted.
+ */
+public class LruReplacement implements ReplacementPolicy {
+
+    private static final int FREE = 0;
+    private static final int USED = 1;
+
+    private final FrameLists lists;
+
+    public LruReplacement(int frames) {
+        lists = FrameLists.allIn(frames, 2, FREE);
+    }
+
+    public void hit(int frame) {
+        lists.moveToFront(USED, frame);
+    }
+
+    public int fault(long key) {
+        int frame = lists.isEmpty(FREE) ? lists.last(USED) : lists.first(FREE);
+        lists.moveToFront(USED, frame);
+        return frame;
+    }
+
+    public void release(int frame) {
+        lists.moveToFront(FREE, frame);
+    }
+}
@@ -1,3 +1,65 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The limits and modes of one simulator run.
+ *
+ * The constants are the defaults. Each run gets its own MemParam, filled in
+ * from a properties file (-config <file>) and then from command line flags,
+ * which win over the file:
+ *
+ *   -pages <n>      number of pages, up to Integer.MAX_VALUE   (NUM_PAGES)
+ *   -programs <n>   programs that may exist at the same time,
+ *                   up to MAX_PROGRAMS                        (NUM_PROGRAMS)
+ *   -maxSize <n>    largest program size in bytes              (MAX_SIZE)
+ *   -pageSize <n>   bytes per page                             (PAGE_SIZE)
+ *   -pool <name>    extent, buddy, bitmap, sharded or atomic
+ *   -policy <name>  first, next, best or worst (extent pool only)
+ *   -storage <name> heap or offheap, where the free extents of the extent
+ *                   pool, the extents of programs and the extents MemSim
+ *                   keeps between commands are kept (see IntSlab); lists
+ *                   made for a single command stay on the heap
+ *   -trace <file>   read commands from this file instead of standard input
+ *   -output <mode>  text, quiet or summary (see OutputSink)
+ *   -snapshotDir <dir>  where 'c' saves and 'r' loads snapshots, "."
+ *   -restore <file> start from this snapshot instead of an empty simulator
+ *   -journal <dir>  log every state change to a journal in this directory
+ *   -journalGroup <n>  operations written and synced at a time, 256
+ *   -recover <bool> start from the latest snapshot in -snapshotDir and the
+ *                   -journal operations after it (see MemSim.recover)
+ *   -compactAt <n>  compact whenever there are more free extents than
+ *                   this after 'i', 't', 'g' or 's', 0 for never
+ *   -compactBudget <n>  pages moved by such a compaction at most, 0 for
+ *                   no limit, 1024 (see MemSim.compact). A journal is
+ *                   replayed with the same -compactAt and -compactBudget
+ *   -frames <n>     frames for demand paging, taken from the pages at
+ *                   startup, 0 for no paging (see PagingUnit)
+ *   -replacement <name>  lru, clock, 2q or arc, the page replacement policy
+ *   -tlb <n>        TLB entries for the translations of 'a', 0 for no TLB
+ *   -tlbWays <n>    entries per TLB set, 1 for direct-mapped, 0 for fully
+ *                   associative, 4
+ *   -tlbReplacement <name>  lru, fifo or random (see Tlb)
+ *   -tlbAsid <bool> tag TLB entries with the program, true; when false
+ *                   the TLB is flushed when another program runs
+ *   -hugePages <n>  pages per huge page, e.g. 512, 0 for no huge pages
+ *                   (see MemSim.allocatePages)
+ *   -hugeFill <percent>  how full the last huge page of a program must be
+ *                   to be taken (or kept on 's') as a huge page, 100
+ *   -hugeTlb <n>    entries of the TLB for huge pages, 32
+ *   -metrics <file> add a sample of the metrics to this file every interval
+ *   -metricsFormat <name>  csv or json (see SimMetrics)
+ *   -metricsInterval <ms>  time between samples, 1000
+ *   -jmx <bool>     show the metrics over JMX
+ *
+ * A properties file uses the same names without the dash, e.g. pages=1048576.
+ * Any other name is refused, so that a mistyped flag does not quietly give a
+ * run with the defaults; programs with flags of their own name them when
+ * they call fromArgs or apply.
+ * A binary trace records the four limits of its run in its header; when one
+ * is replayed those are the defaults instead of the constants.
+ */
 public class MemParam {
 
     public static final int NUM_PAGES = 30;
@@ -5,4 +67,338 @@ public class MemParam {
     public static final int MAX_SIZE = 25;
     public static final int PAGE_SIZE = 3;
 
-}
\ No newline at end of file
+    // Upper limit for -programs, the program table needs 4 entries per program
+    public static final int MAX_PROGRAMS = 1 << 28;
+
+    // The flags (and setting names) above, without the dash
+    public static final String FLAGS[] = {"config", "pages", "programs", "maxSize", "pageSize",
+            "pool", "policy", "storage", "trace", "output", "snapshotDir", "restore", "journal",
+            "journalGroup", "recover", "compactAt", "compactBudget", "frames", "replacement", "tlb",
+            "tlbWays", "tlbReplacement", "tlbAsid", "hugePages", "hugeFill", "hugeTlb", "metrics",
+            "metricsFormat", "metricsInterval", "jmx"};
+
+    public int numPages = NUM_PAGES;
+    public int numPrograms = NUM_PROGRAMS;
+    public int maxSize = MAX_SIZE;
+    public int pageSize = PAGE_SIZE;
+    public String pool = "extent";
+    public String policy = "first";
+    public String storage = "heap";
+    public String trace = null;
+    public String output = "text";
+    public String snapshotDir = ".";
+    public String restore = null;
+    public String journal = null;
+    public int journalGroup = 256;
+    public boolean recover = false;
+    public int frames = 0;
+    public String replacement = "lru";
+    public int tlb = 0;
+    public int tlbWays = 4;
+    public String tlbReplacement = "lru";
+    public boolean tlbAsid = true;
+    public int hugePages = 0;
+    public int hugeFill = 100;
+    public int hugeTlb = 32;
+    public int compactAt = 0;
+    public int compactBudget = 1024;
+    public String metrics = null;
+    public String metricsFormat = "csv";
+    public int metricsInterval = 1000;
+    public boolean jmx = false;
+
+    /**
+     * Builds the parameters for a run from its command line. Arguments that
+     * are not flags are left for the caller.
+     *
+     * @param args     String[]
+     * @param ownFlags String[], names of the caller's own flags, which are skipped
+     * @return MemParam
+     * @throws IllegalArgumentException when a flag is unknown or its value is not valid
+     */
+    public static MemParam fromArgs(String[] args, String... ownFlags) {
+        return new MemParam().apply(args, ownFlags);
+    }
+
+    /**
+     * Makes a copy of these parameters, to be changed without changing them.
+     *
+     * @return MemParam
+     */
+    public MemParam copy() {
+        MemParam params = new MemParam();
+        params.numPages = numPages;
+        params.numPrograms = numPrograms;
+        params.maxSize = maxSize;
+        params.pageSize = pageSize;
+        params.pool = pool;
+        params.policy = policy;
+        params.storage = storage;
+        params.trace = trace;
+        params.output = output;
+        params.snapshotDir = snapshotDir;
+        params.restore = restore;
+        params.journal = journal;
+        params.journalGroup = journalGroup;
+        params.recover = recover;
+        params.frames = frames;
+        params.replacement = replacement;
+        params.tlb = tlb;
+        params.tlbWays = tlbWays;
+        params.tlbReplacement = tlbReplacement;
+        params.tlbAsid = tlbAsid;
+        params.hugePages = hugePages;
+        params.hugeFill = hugeFill;
+        params.hugeTlb = hugeTlb;
+        params.compactAt = compactAt;
+        params.compactBudget = compactBudget;
+        params.metrics = metrics;
+        params.metricsFormat = metricsFormat;
+        params.metricsInterval = metricsInterval;
+        params.jmx = jmx;
+        return params;
+    }
+
+    /**
+     * Takes the settings of a command line (and of its -config file) on top of
+     * the current ones.
+     *
+     * @param args     String[]
+     * @param ownFlags String[], names of the caller's own flags, which are skipped
+     * @return MemParam, this object
+     * @throws IllegalArgumentException when a flag is unknown or its value is not valid
+     */
+    public MemParam apply(String[] args, String... ownFlags) {
+        Properties flags = new Properties();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                break;
+            }
+            String name = args[i].substring(1);
+            if (isOwnFlag(name, ownFlags)) {
+                continue;
+            }
+            checkName("flag -", name);
+            if (name.equals("config")) {
+                try (InputStream in = new FileInputStream(args[i + 1])) {
+                    Properties file = new Properties();
+                    file.load(in);
+                    for (String key : file.stringPropertyNames()) {
+                        if (!isOwnFlag(key, ownFlags)) {
+                            checkName("setting ", key);
+                        }
+                    }
+                    load(file);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Cannot read " + args[i + 1] + ": " + e.getMessage());
+                }
+            } else {
+                flags.setProperty(name, args[i + 1]);
+            }
+        }
+
+        load(flags);
+        return this;
+    }
+
+    /**
+     * Takes every setting that is present in 'props'; the others keep their value.
+     *
+     * @param props Properties
+     * @throws IllegalArgumentException when a value is not valid
+     */
+    public void load(Properties props) {
+        numPages = intProperty(props, "pages", numPages, 1, Integer.MAX_VALUE);
+        numPrograms = intProperty(props, "programs", numPrograms, 1, MAX_PROGRAMS);
+        maxSize = intProperty(props, "maxSize", maxSize, 0, Integer.MAX_VALUE);
+        pageSize = intProperty(props, "pageSize", pageSize, 1, Integer.MAX_VALUE);
+        pool = props.getProperty("pool", pool);
+        policy = props.getProperty("policy", policy);
+        storage = props.getProperty("storage", storage);
+        if (!storage.equals("heap") && !storage.equals("offheap")) {
+            throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+        trace = props.getProperty("trace", trace);
+        output = props.getProperty("output", output);
+        snapshotDir = props.getProperty("snapshotDir", snapshotDir);
+        restore = props.getProperty("restore", restore);
+        journal = props.getProperty("journal", journal);
+        journalGroup = intProperty(props, "journalGroup", journalGroup, 1, Integer.MAX_VALUE);
+        recover = booleanProperty(props, "recover", recover);
+        frames = intProperty(props, "frames", frames, 0, Integer.MAX_VALUE);
+        replacement = props.getProperty("replacement", replacement);
+        tlb = intProperty(props, "tlb", tlb, 0, Integer.MAX_VALUE);
+        tlbWays = intProperty(props, "tlbWays", tlbWays, 0, Integer.MAX_VALUE);
+        tlbReplacement = props.getProperty("tlbReplacement", tlbReplacement);
+        tlbAsid = booleanProperty(props, "tlbAsid", tlbAsid);
+        hugePages = intProperty(props, "hugePages", hugePages, 0, Integer.MAX_VALUE);
+        hugeFill = intProperty(props, "hugeFill", hugeFill, 1, 100);
+        hugeTlb = intProperty(props, "hugeTlb", hugeTlb, 0, Integer.MAX_VALUE);
+        if (hugePages == 1) {
+            throw new IllegalArgumentException("hugePages must be 0 or at least 2");
+        }
+        compactAt = intProperty(props, "compactAt", compactAt, 0, Integer.MAX_VALUE);
+        compactBudget = intProperty(props, "compactBudget", compactBudget, 0, Integer.MAX_VALUE);
+        metrics = props.getProperty("metrics", metrics);
+        metricsFormat = props.getProperty("metricsFormat", metricsFormat);
+        metricsInterval = intProperty(props, "metricsInterval", metricsInterval, 1, Integer.MAX_VALUE);
+        jmx = booleanProperty(props, "jmx", jmx);
+    }
+
+    /**
+     * Creates an empty TLB of the configured size, associativity and
+     * replacement. Fewer entries than ways make it fully associative.
+     *
+     * @return Tlb, null when -tlb is 0
+     * @throws IllegalArgumentException when the TLB settings are not valid
+     */
+    public Tlb newTlb() {
+        if (tlb == 0) {
+            return null;
+        }
+        return new Tlb(tlb, Math.min(tlbWays, tlb), tlbReplacement, tlbAsid);
+    }
+
+    /**
+     * Creates an empty TLB for huge pages, with the associativity and
+     * replacement of the other one.
+     *
+     * @return Tlb, null when -hugeTlb is 0
+     * @throws IllegalArgumentException when the TLB settings are not valid
+     */
+    public Tlb newHugeTlb() {
+        if (hugeTlb == 0) {
+            return null;
+        }
+        return new Tlb(hugeTlb, Math.min(tlbWays, hugeTlb), tlbReplacement, tlbAsid);
+    }
+
+    /**
+     * Tells whether extents are kept outside the Java heap (-storage offheap).
+     *
+     * @return boolean
+     */
+    public boolean isOffHeap() {
+        return storage.equals("offheap");
+    }
+
+    /**
+     * Creates an empty page pool of the configured kind, with every page free.
+     *
+     * @return PagePool
+     * @throws IllegalArgumentException when the pool or policy name is unknown
+     */
+    public PagePool newPool() {
+        switch (pool) {
+            case "extent":
+                return new ExtentPool(0, numPages - 1, AllocPolicy.forName(policy), isOffHeap());
+            case "buddy":
+                return new BuddyPool(numPages);
+            case "bitmap":
+                return new BitmapPool(numPages);
+            case "sharded":
+            case "atomic":
+                return newConcurrentPool();
+            default:
+                throw new IllegalArgumentException("Unknown page pool: " + pool);
+        }
+    }
+
+    /**
+     * Creates an empty page pool that many threads may use at once, for
+     * ConcurrentMemSim. An extent or sharded pool becomes a ShardedPagePool
+     * with one shard per processor, a bitmap or atomic pool an AtomicBitmapPool.
+     *
+     * @return ConcurrentPagePool
+     * @throws IllegalArgumentException when the pool has no thread safe kind
+     */
+    public ConcurrentPagePool newConcurrentPool() {
+        switch (pool) {
+            case "extent":
+            case "sharded":
+                return new ShardedPagePool(numPages, Runtime.getRuntime().availableProcessors(), policy);
+            case "bitmap":
+            case "atomic":
+                return new AtomicBitmapPool(numPages);
+            default:
+                throw new IllegalArgumentException("No thread safe page pool: " + pool);
+        }
+    }
+
+    /**
+     * Throws when 'name' is not one of FLAGS.
+     *
+     * @param kind String, what to call the name in the message
+     * @param name String
+     * @throws IllegalArgumentException when the name is unknown
+     */
+    private static void checkName(String kind, String name) {
+        for (String flag : FLAGS) {
+            if (flag.equals(name)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + kind + name);
+    }
+
+    private static boolean isOwnFlag(String name, String[] ownFlags) {
+        for (String flag : ownFlags) {
+            if (flag.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a whole number setting that must be between 'min' and 'max'.
+     *
+     * @param props Properties
+     * @param name  String
+     * @param value Integer, returned when the setting is missing
+     * @param min   Integer
+     * @param max   Integer
+     * @return Integer
+     */
+    private static int intProperty(Properties props, String name, int value, int min, int max) {
+        String text = props.getProperty(name);
+        if (text == null) {
+            return value;
+        }
+        long number;
+        try {
+            number = Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number: " + text);
+        }
+        if (number < min || number > max) {
+            throw new IllegalArgumentException(name + " must be between " + min
+                    + " and " + max + ": " + text);
+        }
+        return (int) number;
+    }
+
+    /**
+     * Reads a setting that must be true or false.
+     *
+     * @param props Properties
+     * @param name  String
+     * @param value boolean, returned when the setting is missing
+     * @return boolean
+     */
+    private static boolean booleanProperty(Properties props, String name, boolean value) {
+        String text = props.getProperty(name);
+        if (text == null) {
+            return value;
+        }
+        switch (text.trim()) {
+            case "true":
+                return true;
+            case "false":
+                return false;
+            default:
+                throw new IllegalArgumentException(name + " must be true or false: " + text);
+        }
+    }
+}
@@ -1,4 +1,11 @@
-import java.util.Scanner;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 /**
  * Brandon Gachuz
@@ -18,16 +25,35 @@ import java.util.Scanner;
  *
  * THE SIMULATION WORKS AS FOLLOWS:
  *
- * The program will read and process a sequence of instructions read from the terminal.
+ * The program will read and process a sequence of instructions read from the terminal,
+ * or from a trace file given with -trace. A trace file may also be a binary trace
+ * (see BinaryTraceWriter and TraceConverter). WorkloadGenerator makes synthetic
+ * commands and runs them on a simulator directly.
  *
  * <opcode> <prog_id> <size>
  *
  * 'opcode' is a single character. Possible values are, 'i' for initiate, 't' for terminate,
  * 'p' for print, 'g' for grow, 's' for shrink, and 'x' to exit.
+ * 'c <n>' saves the whole state as snapshot n and 'r <n>' loads snapshot n back
+ * (see saveSnapshot); a run may also start from a snapshot with -restore.
+ * With -journal every change is logged before it is made (see Journal), and
+ * -recover rebuilds the state after a crash from the latest snapshot and
+ * the journal (see recover).
+ * 'a <prog_id> <address>' accesses a byte of a program when demand paging
+ * is on (-frames), see PagingUnit, and translates its address through the
+ * TLB when there is one (-tlb), see Tlb.
+ * With -hugePages a program also gets aligned huge pages of that many
+ * pages where its size allows, see allocatePages.
+ * 'd 0 <n>' compacts memory, moving at most n pages (all when n is 0), see
+ * compact; -compactAt does this by itself when free pages get scattered.
+ * 'b 0 <n>' runs the next n commands as one batch, see executeBatch.
  *
- * 'prog_id' is an integer between 0 and NUM_PROGRAMS-1 (inclusive).
+ * 'prog_id' is a non-negative integer; at most NUM_PROGRAMS programs may exist at once.
  * 'size' is an integer between 0 and MAX_SIZE (inclusive).
  *
+ * NUM_PAGES, NUM_PROGRAMS, MAX_SIZE and PAGE_SIZE are read at startup (see MemParam),
+ * and each MemSim object is one independent simulator with its own limits.
+ *
  * ERROR HANDLING: Required for the following nine situations
  * 1. Attempting to initiate a program that already exists
  * 2. Attempting to initiate a program for which there is not enough available memory.
@@ -40,51 +66,498 @@ import java.util.Scanner;
  * 8. Attempting to shrink a program that does not exist.
  * 9. Attempting to shrink a program by more bytes then are currently allocated
  *    to the program.
+ * Initiate also refuses negative program ids, and new programs once NUM_PROGRAMS exist.
  */
 public class MemSim {
 
     // Maximum number of pages
-    public static final int NUM_PAGES = MemParam.NUM_PAGES;
+    public final int numPages;
 
     // Maximum number of programs
-    public static final int NUM_PROGRAMS = MemParam.NUM_PROGRAMS;
+    public final int numPrograms;
 
     // Maximum size
-    public static final int MAX_SIZE = MemParam.MAX_SIZE;
+    public final int maxSize;
 
     // Maximum number of page size
-    public static final int PAGE_SIZE = MemParam.PAGE_SIZE;
+    public final int pageSize;
+
+    // Running programs, by program id
+    private final ProgTable programs;
+
+    // Free page list
+    private final PagePool freePageList;
+
+    // Where the outcome of every command is reported
+    private OutputSink out;
+
+    // Directory of the snapshots saved and loaded by 'c' and 'r'
+    private final String snapshotDir;
+
+    // Running totals kept by the allocate and free paths, so that
+    // handleExit does not have to walk every program's page list
+    private int pagesOccupied;
+    private long bytesInUse;
+
+    // Operations that changed the state so far, see Journal, and where
+    // they are logged (null when not journaling)
+    private long sequence;
+    private Journal journal;
+
+    // Set while recover replays the journal, and once it has
+    private boolean recovering;
+    private boolean recovered;
+
+    // Frames and page tables for 'a', null when paging is off
+    private final PagingUnit paging;
+
+    // Translations of 'a', null when there is no TLB; every program gets
+    // a new ASID when its pages change, so its old entries are never hit
+    private final Tlb tlb;
+    private int lastAsid;
+
+    // Huge pages of hugeFactor pages each, 0 for none, see allocatePages;
+    // their translations have a TLB of their own
+    private final int hugeFactor;
+    private final int hugeFill;
+    private final Tlb hugeTlb;
+    private int hugePagesInUse;
+    private long promotions;
+    private long demotions;
+    private final List<PageUsage> scratch;
+
+    // Whether the extents kept from one command to the next live outside
+    // the Java heap (-storage offheap, see IntSlab)
+    private final boolean offHeap;
+
+    // Count and latency of every command, null when not measuring
+    private SimMetrics metrics;
+
+    // Automatic compaction: when there are more free extents than
+    // compactAt (0 for never), up to compactBudget pages are moved
+    private final int compactAt;
+    private final int compactBudget;
+    private long pagesMoved;
+
+    // Commands of a 'b' still to come, and the ones collected so far
+    private int batchLeft;
+    private final CommandArray batch = new CommandArray();
+
+    // While executeBatch defers the pool: the pages freed and the pages
+    // promised to programs that the pool has not seen yet, and the
+    // programs that were promised pages, in the order they were
+    private boolean batching;
+    private int batchFreed;
+    private int batchOwed;
+    private final List<PageUsage> batchFrees;
+    private ProgInfo batchProgs[] = new ProgInfo[16];
+    private int batchProgCount;
+
+    // Operations of the batch that wait for the pool with it, journaled
+    // behind a 'b' once it has been settled
+    private final CommandArray batchLog = new CommandArray();
+
+    /**
+     * Creates a simulator with every page free and no programs.
+     *
+     * @param params MemParam
+     */
+    public MemSim(MemParam params) {
+        this.numPages = params.numPages;
+        this.numPrograms = params.numPrograms;
+        this.maxSize = params.maxSize;
+        this.pageSize = params.pageSize;
+        this.offHeap = params.isOffHeap();
+        this.programs = new ProgTable(numPrograms, offHeap);
+        this.scratch = new List<PageUsage>(offHeap);
+        this.batchFrees = new List<PageUsage>(offHeap);
+        this.freePageList = params.newPool();
+        this.out = OutputSink.forMode(params.output, this);
+        this.snapshotDir = params.snapshotDir;
+        this.compactAt = params.compactAt;
+        this.compactBudget = params.compactBudget;
+
+        if (params.frames > 0) {
+            List<PageUsage> frames = new List<PageUsage>();
+            if (!takeFrames(params.frames, frames)) {
+                throw new IllegalArgumentException("frames must be at most the number of pages: "
+                        + params.frames);
+            }
+            this.paging = new PagingUnit(frames, params.replacement);
+        } else {
+            this.paging = null;
+        }
+        this.tlb = params.newTlb();
+        this.hugeFactor = params.hugePages;
+        this.hugeFill = params.hugeFill;
+        this.hugeTlb = tlb != null && hugeFactor > 0 ? params.newHugeTlb() : null;
+    }
 
+    /**
+     * Gets the number of free pages.
+     * The pool keeps this count itself, so this is O(1). In a batch it
+     * also counts the frees and allocations that are held back.
+     *
+     * @return Int
+     */
+    public int getFreePageCount() {
+        return freePageList.getFreePages() + batchFreed - batchOwed;
+    }
 
     /**
-     * Gets the number of free pages from param 'pages'
+     * Gets the number of separate free extents (or blocks).
      *
-     * @param pages List<PageUsage>
      * @return Int
      */
-    public static int getFreePageCount(List<PageUsage> pages) {
-        int pCount = 0;
-        for (int i = 1; i <= pages.size(); i++) {
-            pCount += pages.get(i).getEnd() - pages.get(i).getStart() + 1;
+    public int getFreeExtentCount() {
+        return freePageList.getExtentCount();
+    }
+
+    /**
+     * Gets the number of pages in the largest free extent (or block).
+     *
+     * @return Int
+     */
+    public int getLargestFreeExtent() {
+        return freePageList.getLargestExtent();
+    }
+
+    /**
+     * Takes exactly 'count' pages from the pool into 'dest' for the frames of
+     * demand paging, giving back any a pool hands out over that.
+     *
+     * @param count Integer
+     * @param dest  List<PageUsage>, empty
+     * @return boolean false when the pool runs out, with 'dest' given back
+     */
+    private boolean takeFrames(int count, List<PageUsage> dest) {
+        int got = freePageList.allocate(count, dest);
+        if (got < count) {
+            for (int i = 1; i <= dest.size(); i++) {
+                freePageList.free(dest.getStart(i), dest.getEnd(i));
+            }
+            dest.removeAll();
+            return false;
         }
-        return pCount;
+        for (int extra = got - count; extra > 0; ) {
+            int last = dest.size();
+            int take = Math.min(extra, dest.getPages(last));
+            freePageList.free(dest.getEnd(last) - take + 1, dest.getEnd(last));
+            if (take == dest.getPages(last)) {
+                dest.remove(last);
+            } else {
+                dest.setEnd(last, dest.getEnd(last) - take);
+            }
+            extra -= take;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the demand paging state.
+     *
+     * @return PagingUnit, null when paging is off
+     */
+    public PagingUnit getPaging() {
+        return paging;
+    }
+
+    /**
+     * Gets the number of pages moved by compaction so far.
+     *
+     * @return Long
+     */
+    public long getPagesMoved() {
+        return pagesMoved;
+    }
+
+    /**
+     * Gets the sink the outcome of every command is reported to.
+     *
+     * @return OutputSink
+     */
+    public OutputSink getOutput() {
+        return out;
+    }
+
+    /**
+     * Gets the number of pages held by all running programs.
+     *
+     * @return Int
+     */
+    public int getOccupiedPageCount() {
+        return pagesOccupied;
+    }
+
+    /**
+     * Gets the number of running programs.
+     *
+     * @return Int
+     */
+    public int getRunningCount() {
+        return programs.size();
+    }
+
+    /**
+     * Gets the number of bytes held by all running programs.
+     *
+     * @return Long
+     */
+    public long getBytesInUse() {
+        return bytesInUse;
     }
 
     /**
      * When adding pages (PageUsage objects), this method will store them in ascending order
      * (based on the start value). 'param' will be stored in a list of PageUsage object 'lst'.
+     * Freed pages go to the PagePool instead, which keeps its own order.
      *
      * @param param PageUsage
      * @param lst   List<PageUsage>
      */
     public static void putInOrder(PageUsage param, List<PageUsage> lst) {
-        for (int i = 1; i <= lst.size(); i++) {
-            if (lst.get(i).getStart() > param.getStart()) {
-                lst.add(i, param);
-                return;
+        putInOrder(param.getStart(), param.getEnd(), lst);
+    }
+
+    /**
+     * Same as putInOrder(PageUsage, List) for the pages 'start' through 'end',
+     * without needing a PageUsage object. The pages are merged into the
+     * extents just before and after them when they touch, so a list never
+     * holds two extents that could be one. The place is found by binary
+     * search, and adding after the last extent, the usual case, is O(1).
+     *
+     * @param start Int
+     * @param end   Int
+     * @param lst   List<PageUsage>
+     */
+    public static void putInOrder(int start, int end, List<PageUsage> lst) {
+        int n = lst.size();
+
+        // First extent that starts after 'start'
+        int i;
+        if (n == 0 || lst.getStart(n) < start) {
+            i = n + 1;
+        } else {
+            int lo = 1;
+            int hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lst.getStart(mid) > start) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            i = lst.getStart(lo) > start ? lo : n + 1;
+        }
+
+        boolean before = i > 1 && lst.getEnd(i - 1) + 1 == start;
+        boolean after = i <= n && lst.getStart(i) == end + 1;
+        if (before && after) {
+            lst.setEnd(i - 1, lst.getEnd(i));
+            lst.remove(i);
+        } else if (before) {
+            lst.setEnd(i - 1, end);
+        } else if (after) {
+            lst.setStart(i, start);
+        } else {
+            lst.add(i, start, end);
+        }
+    }
+
+    /**
+     * Runs one command of the simulation, timing it when metrics are taken.
+     *
+     * @param opcode Char
+     * @param progID Int
+     * @param size   Int
+     */
+    public void execute(char opcode, int progID, int size) {
+        if (batchLeft > 0) {
+            batch.add(opcode, progID, size);
+            if (--batchLeft == 0) {
+                runBatch();
+            }
+        } else if (opcode == 'b') {
+            batchLeft = Math.max(0, size);
+        } else if (metrics == null) {
+            dispatch(opcode, progID, size);
+        } else {
+            long start = System.nanoTime();
+            dispatch(opcode, progID, size);
+            metrics.record(opcode, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the commands collected for a 'b', timed as one command when
+     * metrics are taken.
+     */
+    private void runBatch() {
+        batchLeft = 0;
+        long start = System.nanoTime();
+        executeBatch(batch);
+        batch.clear();
+        if (metrics != null) {
+            metrics.record('b', System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs 'commands' as one batch. Every command reports the same outcome,
+     * and leaves the same counts of pages and bytes, as when they are run
+     * one at a time with execute, but the pool is only used once per run
+     * of initiates, terminates, grows and shrinks: their handlers decide
+     * against the free page count as it would be, and the pages they free
+     * or allocate are held back. The frees are then merged into as few
+     * extents as they make and given back first, and all pages promised
+     * are taken in one allocate and handed out in the order of the
+     * commands. Which physical pages a program gets may differ from
+     * running the commands one at a time.
+     *
+     * Any other command (print, exit, access, compact, checkpoint, restore)
+     * looks at the pages themselves, so the held back frees and allocations
+     * are made before it runs. A 'b' in a batch is ignored. With huge pages,
+     * or a pool that may hand out more pages than asked for, the pages a
+     * program will hold cannot be known in advance, and the commands are
+     * run one at a time. While the pool is held back compaction by
+     * -compactAt waits, and it is checked once more at the end of the batch;
+     * commands run one at a time are still followed by it as usual.
+     *
+     * With -journal, the operations held back are logged when they are made,
+     * behind a 'b 0 <n>' that tells recover to replay those n as one run, so
+     * that the recovered state has the pages the batch left.
+     *
+     * @param commands CommandArray
+     */
+    public void executeBatch(CommandArray commands) {
+        boolean defer = hugeFactor == 0 && freePageList.allocatesExactly();
+        for (int i = 0; i < commands.size(); i++) {
+            char opcode = commands.getOpcode(i);
+            if (opcode == 'b') {
+                continue;
+            }
+            boolean batched = opcode == 'i' || opcode == 't' || opcode == 'g' || opcode == 's';
+            if (defer && batched) {
+                batching = true;
+            } else {
+                settleBatch();
+            }
+            dispatch(opcode, commands.getProgID(i), commands.getSize(i));
+        }
+        settleBatch();
+        autoCompact();
+    }
+
+    /**
+     * Replays operations that were held back together by executeBatch,
+     * read from the journal behind their 'b'.
+     *
+     * @param run CommandArray, initiates, terminates, grows and shrinks
+     */
+    private void replayBatch(CommandArray run) {
+        for (int i = 0; i < run.size(); i++) {
+            batching = true;
+            dispatch(run.getOpcode(i), run.getProgID(i), run.getSize(i));
+        }
+        settleBatch();
+    }
+
+    /**
+     * Makes the frees and allocations held back by executeBatch.
+     */
+    private void settleBatch() {
+        if (!batching) {
+            return;
+        }
+        batching = false;
+        if (batchLog.size() > 0) {
+            log('b', 0, batchLog.size());
+            for (int i = 0; i < batchLog.size(); i++) {
+                log(batchLog.getOpcode(i), batchLog.getProgID(i), batchLog.getSize(i));
+            }
+            batchLog.clear();
+        }
+        for (int i = 1; i <= batchFrees.size(); i++) {
+            freePageList.free(batchFrees.getStart(i), batchFrees.getEnd(i));
+        }
+        batchFrees.removeAll();
+        batchFreed = 0;
+
+        List<PageUsage> runs = scratch;
+        runs.removeAll();
+        if (batchOwed > 0) {
+            freePageList.allocate(batchOwed, runs);
+            batchOwed = 0;
+        }
+        for (int p = 0; p < batchProgCount; p++) {
+            ProgInfo prog = batchProgs[p];
+            batchProgs[p] = null;
+            if (!prog.prog_usage.isEmpty()) {
+                prog.asid = 0;  // as in allocatePages
+            }
+            while (prog.pending > 0) {
+                int start = runs.getStart(1);
+                int take = Math.min(prog.pending, runs.getPages(1));
+                putInOrder(start, start + take - 1, prog.prog_usage);
+                if (take == runs.getPages(1)) {
+                    runs.remove(1);
+                } else {
+                    runs.setStart(1, start + take);
+                }
+                prog.pending -= take;
             }
         }
-        lst.add(lst.size() + 1, param);
+        batchProgCount = 0;
+    }
+
+    /**
+     * Hands one command to its handler.
+     *
+     * @param opcode Char
+     * @param progID Int
+     * @param size   Int
+     */
+    private void dispatch(char opcode, int progID, int size) {
+        switch (opcode) {
+            case 'i':
+                handleInitiate(progID, size);
+                autoCompact();
+                break;
+            case 't':
+                handleTerminate(progID);
+                autoCompact();
+                break;
+            case 'p':
+                handlePrint(progID);
+                break;
+            case 'x':
+                handleExit();
+                break;
+            case 'g':
+                handleGrow(progID, size);
+                autoCompact();
+                break;
+            case 's':
+                handleShrink(progID, size);
+                autoCompact();
+                break;
+            case 'd':
+                handleCompact(size);
+                break;
+            case 'a':
+                handleAccess(progID, size);
+                break;
+            case 'c':
+                handleCheckpoint(progID);
+                break;
+            case 'r':
+                handleRestore(progID);
+                break;
+            default:
+                out.emit(Outcome.UNKNOWN, 0, 0, 0);
+                break;
+        }
     }
 
     /**
@@ -101,81 +574,55 @@ public class MemSim {
      *
      * ERROR on initiate: program <prog_id> already exists
      *
-     * @param programsArray ProgInfo[]
      * @param progID        Int
      * @param size          Int
-     * @param freePageList  List<PageUsage>
      */
-    public static void handleInitiate(ProgInfo programsArray[], int progID, int size,
-                                      List<PageUsage> freePageList) {
+    public void handleInitiate(int progID, int size) {
 
         // Checks to see if program that will be initiated is not already active
-        if (programsArray[progID].bytes == -1) {
-
-            int numP = (size / PAGE_SIZE);
+        if (programs.find(progID) == ProgTable.NULL) {
 
-            // Calculates the number pages that will be needed
-            if (size % PAGE_SIZE != 0) {
-                numP++;
-            }
+            int numP = calcPagesHelper(size);
 
             // Gets free page count
-            int freePGCount = getFreePageCount(freePageList);
+            int freePGCount = getFreePageCount();
+
+            if (progID < 0) {
+                out.emit(Outcome.INITIATE_BAD_ID, progID, 0, 0);
+            } else if (programs.size() == numPrograms) {
+                out.emit(Outcome.INITIATE_TOO_MANY, progID, 0, 0);
+            } else if (freePGCount >= numP) {
 
-            if (freePGCount >= numP) {
+                log('i', progID, size);
+                ProgInfo prog = programs.add(progID);
+                prog.bytes = size;
 
-                programsArray[progID].bytes = size;
+                pagesOccupied += handleInitiateHelper(numP, prog);
 
-                handleInitiateHelper(freePageList, numP, programsArray, progID);
+                bytesInUse += size;
 
-                System.out.printf("%nProgram %d initiated, size = %d%n", progID, size);
+                out.emit(Outcome.INITIATED, progID, size, 0);
             } else {
                 // ERROR : NOT ENOUGH PAGES
-                System.out.printf("insufficient space for Program %d%n", progID);
+                out.emit(Outcome.INITIATE_NO_SPACE, progID, 0, 0);
             }
         } else {
             // ERROR : PROGRAM DOES NOT EXIST
-            System.out.printf("ERROR on initiate: Program %d already exists.%n", progID);
+            out.emit(Outcome.INITIATE_EXISTS, progID, 0, 0);
         }
     }
 
     /**
      * handleInitiateHelper is a method with the purpose of condensing the code in 'handleInitiate'.
-     * The primary focus for this method is to loop through the list 'pUsage' and add PageUsage
-     * items in ascending order.
+     * The primary focus for this method is to move 'numP' pages from the page pool
+     * to the program's PageUsage items.
      *
-     * @param pUsage List<PageUsage>
      * @param numP   Int
-     * @param pArr   ProgInfo[]
-     * @param progID Int
+     * @param prog   ProgInfo
+     * @return Int the number of pages the program got, which the pool may round up
      */
-    public static void handleInitiateHelper(List<PageUsage> pUsage, int numP, ProgInfo pArr[], int progID) {
-
-        // Looping through PageUsage list 'pUsage'
-        for (int i = 1; numP != 0; i++) {
-
-            PageUsage temp = pUsage.get(i);
-
-            // Calculates the # of pages from end to start
-            int ans = (temp.getEnd() - temp.getStart()) + 1;
-
-            if (ans <= numP) {
-
-                // Adds the pageUsage item in ascending order
-                putInOrder(temp, pArr[progID].prog_usage);
-                pUsage.remove(i);
-                numP -= ans;
-                --i;
-            } else {
-
-                // Adds the PageUsage item in ascending order
-                putInOrder(new PageUsage(temp.getStart(),
-                                temp.getStart() + numP - 1),
-                        pArr[progID].prog_usage);
-                temp.setStart(numP + temp.getStart());
-                numP = 0;
-            }
-        }
+    public int handleInitiateHelper(int numP, ProgInfo prog) {
+        return allocatePages(prog, numP);
     }
 
     /**
@@ -185,31 +632,29 @@ public class MemSim {
      * Otherwise, the method will calculate the amount of memory that will be freed upon termination
      * and display that data.
      *
-     * @param programsArray ProgInfo
      * @param progID        Int
-     * @param freePageList  List<PageUsage>
      */
-    public static void handleTerminate(ProgInfo programsArray[], int progID, List<PageUsage> freePageList) {
-        int bytesAns = programsArray[progID].bytes;
-        if (bytesAns == -1) {
+    public void handleTerminate(int progID) {
+        ProgInfo prog = programs.get(progID);
+        if (prog == null) {
 
             // Error on terminate command
-            System.out.printf("ERROR on terminate command: Program %d does not exist", progID);
+            out.emit(Outcome.TERMINATE_MISSING, progID, 0, 0);
 
         } else {
 
-            programsArray[progID].bytes = -1;
-            List<PageUsage> temp = programsArray[progID].prog_usage;
-            int freedPages = 0;
-
-            for (int i = temp.size(); i >= 1; i--) {
-
-                // Updating total number of freed pages
-                freedPages += (temp.get(1).getEnd() - temp.get(1).getStart()) + 1;
-                putInOrder(temp.get(1), freePageList);
-                temp.remove(1);
+            log('t', progID, 0);
+            if (paging != null) {
+                paging.release(prog, 0);
+                prog.pageTable = null;
             }
-            System.out.printf("%nProgram %d terminated, %d pages freed", progID, freedPages);
+            int bytesAns = prog.bytes;
+            int freedPages = releaseHuge(prog) + trimBase(prog, 0);
+            programs.remove(progID);
+
+            pagesOccupied -= freedPages;
+            bytesInUse -= bytesAns;
+            out.emit(Outcome.TERMINATED, progID, freedPages, 0);
         }
     }
 
@@ -224,25 +669,24 @@ public class MemSim {
      * Start page   End page
      * 1           3
      *
-     * @param programsArray ProgInfo
      * @param progID        Int
-     * @param freePageList  List<PageUsage>
      */
-    public static void handlePrint(ProgInfo programsArray[], int progID, List<PageUsage> freePageList) {
+    public void handlePrint(int progID) {
 
         // Check if the progID is a negative value
         if (progID < 0) {
 
-            System.out.printf("%nContents of free page list%n");
-            System.out.printf("Start page  End page%n");
+            out.emit(Outcome.FREE_LIST, 0, 0, 0);
+
+            List<PageUsage> extents = new List<PageUsage>();
+            freePageList.copyFreeExtents(extents);
 
-            for (int i = 1; i <= freePageList.size(); i++) {
-                System.out.printf("%5d%11d%n", freePageList.get(i).getStart(),
-                        freePageList.get(i).getEnd());
+            for (int i = 1; i <= extents.size(); i++) {
+                out.emit(Outcome.PAGE_ROW, extents.getStart(i), extents.getEnd(i), 0);
             }
 
         } else {
-            handlePrintHelper(programsArray, progID);
+            handlePrintHelper(progID);
         }
     }
 
@@ -263,24 +707,26 @@ public class MemSim {
      * Start page   End page
      * 1           0
      *
-     * @param programsArray ProgInfo
      * @param progID        Int
      */
-    public static void handlePrintHelper(ProgInfo programsArray[], int progID) {
-        if (programsArray[progID].bytes == -1) {
+    public void handlePrintHelper(int progID) {
+        ProgInfo prog = programs.get(progID);
+        if (prog == null) {
 
-            System.out.printf("%nERROR on print command: Program %d does not exist", progID);
+            out.emit(Outcome.PRINT_MISSING, progID, 0, 0);
 
         } else {
 
-            System.out.printf("Page usage for program %d --- size = %d", progID,
-                    programsArray[progID].bytes);
-            System.out.printf("%nStart page  End page%n");
+            out.emit(Outcome.PROGRAM_USAGE, progID, prog.bytes, 0);
+
+            for (int i = 1; prog.huge != null && i <= prog.huge.size(); i++) {
+                out.emit(Outcome.HUGE_PAGE_ROW, prog.huge.getStart(i), prog.huge.getEnd(i), 0);
+            }
 
-            List<PageUsage> tmp = programsArray[progID].prog_usage;
+            List<PageUsage> tmp = prog.prog_usage;
 
             for (int i = 1; i <= tmp.size(); i++) {
-                System.out.printf("%5d%11d%n", tmp.get(i).getStart(), tmp.get(i).getEnd());
+                out.emit(Outcome.PAGE_ROW, tmp.getStart(i), tmp.getEnd(i), 0);
             }
         }
     }
@@ -288,27 +734,26 @@ public class MemSim {
     /**
      * handleExit will handle exiting the memory simulation. Upon completion, a message will display
      * the number of programs that exist and the number of pages they occupy collectively.
-     *
-     * @param programsArray ProgInfo
+     * Both numbers come from the running totals.
      */
-    public static void handleExit(ProgInfo programsArray[]) {
-        int pgOccupied = 0;
-        int running = 0;
-
-        for (int i = 0; i < programsArray.length; i++) {
-            if (programsArray[i].bytes > -1) {
-                running++;
-
-                List<PageUsage> pUsage = programsArray[i].prog_usage;
-
-                for (int inner = 1; inner <= pUsage.size(); inner++) {
-                    pgOccupied += pUsage.get(inner).getEnd() -
-                            pUsage.get(inner).getStart() + 1;
-                }
-            }
+    public void handleExit() {
+        if (journal != null) {
+            journal.flush();
+        }
+        // Every program in the table counts: handleShrink never takes a
+        // program below 0 bytes, which is what the count used to leave out
+        out.emit(Outcome.EXIT, programs.size(), pagesOccupied, 0);
+        if (paging != null) {
+            long accesses = paging.getAccesses();
+            out.emit(Outcome.PAGING_STATS, (int) Math.min(accesses, Integer.MAX_VALUE),
+                    (int) Math.min(paging.getFaults(), Integer.MAX_VALUE),
+                    accesses == 0 ? 0 : (int) (paging.getFaults() * 1000 / accesses));
+        }
+        if (tlb != null) {
+            out.emit(Outcome.TLB_STATS, (int) Math.min(getTlbHits(), Integer.MAX_VALUE),
+                    (int) Math.min(getTlbMisses(), Integer.MAX_VALUE),
+                    (int) Math.min(getTlbReach(), Integer.MAX_VALUE));
         }
-        System.out.printf("%nSIMULATOR EXIT: %d programs exist, occupying %d pages%n",
-                running, pgOccupied);
 
     }
 
@@ -319,15 +764,15 @@ public class MemSim {
      * @param bytes Integer
      * @return Integer
      */
-    private static int calcPagesHelper(int bytes) {
+    private int calcPagesHelper(int bytes) {
         int ans;
-        if (bytes % PAGE_SIZE == 0) {
+        if (bytes % pageSize == 0) {
             ans = 0;
         } else {
             ans = 1;
         }
 
-        return (bytes/PAGE_SIZE) + (ans);
+        return (bytes/pageSize) + (ans);
     }
 
     /**
@@ -341,57 +786,37 @@ public class MemSim {
      * Attempting to grow a program for which the additional <size>
      * when combined with the original size, exceeds MAX_SIZE
      *
-     * @param programsArray ProgInfo
-     * @param freePageList List<PageUsage>
      * @param progID Integer
      * @param size Integer
      */
-    public static void handleGrow(ProgInfo programsArray[],
-                                  List<PageUsage> freePageList, int progID, int size) {
+    public void handleGrow(int progID, int size) {
 
-        // Number of bytes in a program
-        int bytesAns = programsArray[progID].bytes;
+        ProgInfo prog = programs.get(progID);
 
-        if (bytesAns == -1) {
-            System.out.printf("%nERROR on grow command: Program %d does not exist%n", progID);
-        } else if (bytesAns + size > MAX_SIZE) {
-            System.out.printf("%nERROR on grow command: MAX SIZE exceeded for Program %d%n", progID);
+        if (prog == null) {
+            out.emit(Outcome.GROW_MISSING, progID, 0, 0);
+        } else if ((long) prog.bytes + size > maxSize) {
+            out.emit(Outcome.GROW_MAX_SIZE, progID, 0, 0);
         } else {
-            int progSize = programsArray[progID].bytes;
-            int progPages = calcPagesHelper(progSize);
-            progSize += size;
-            int totPages = progSize;
-            int amountNeeded = totPages - progPages;
+            int progSize = prog.bytes + size;
+
+            // Pages held beyond the old size, e.g. a buddy block, count towards the new one
+            int amountNeeded = calcPagesHelper(progSize) - pagesHeld(prog);
 
             // Free page count
-            int fPages = getFreePageCount(freePageList);
+            int fPages = getFreePageCount();
 
             if (amountNeeded > fPages) {
-                System.out.printf("%nERROR on grow command: insufficient space for program %d%n", progID);
+                out.emit(Outcome.GROW_NO_SPACE, progID, 0, 0);
             } else {
-                programsArray[progID].bytes = progSize;
-
-                // Allocate needed pages
-                for (int i = 1; i <= freePageList.size() && progPages > 0; i++) {
-                    PageUsage temp = freePageList.get(i);
-                    int ans = (temp.getEnd()-temp.getStart()) + 1;
-
-                    if (ans > progPages) {
-                        putInOrder(new PageUsage(temp.getStart(), temp.getStart() + progPages-1),
-                                programsArray[progID].prog_usage);
-
-                        temp.setStart(temp.getStart()+progPages);
-                        progPages = 0;
-                    } else {
-                        putInOrder(temp, programsArray[progID].prog_usage);
-                        progPages -= temp.getEnd()-temp.getStart()+1;
-                        freePageList.remove(i);
-                        --i;
-                    }
-                }
+                log('g', progID, size);
+                prog.bytes = progSize;
+                bytesInUse += size;
+
+                // Allocate needed pages, merged into the extents they touch
+                pagesOccupied += allocatePages(prog, Math.max(0, amountNeeded));
                 // Success Message
-                System.out.printf("%nProgram %d increased by %d bytes, new size = %d%n",
-                        progID, size, progSize);
+                out.emit(Outcome.GREW, progID, size, progSize);
             }
         }
     }
@@ -407,112 +832,1273 @@ public class MemSim {
      * Attempting to shrink a program by more bytes than are currently
      * allocated to the program
      *
-     * @param programsArray ProgInfo
-     * @param freePageList List<PageUsage>
      * @param progID Integer
      * @param size Integer
      */
-    public static void handleShrink(ProgInfo programsArray[], List<PageUsage> freePageList,
-                                    int progID, int size) {
+    public void handleShrink(int progID, int size) {
 
-        int pSize = programsArray[progID].bytes;
+        ProgInfo prog = programs.get(progID);
 
-        if (pSize == -1) {
-            System.out.printf("%nERROR on shrink command: Program %d does not exist%n", progID);
-        } else if (pSize - size < 0) {
-            System.out.printf("%nERROR on shrink command: insufficient allocation for Program %d%n", progID);
+        if (prog == null) {
+            out.emit(Outcome.SHRINK_MISSING, progID, 0, 0);
+        } else if (prog.bytes - size < 0) {
+            out.emit(Outcome.SHRINK_TOO_MUCH, progID, 0, 0);
         } else {
-
-            // Number of pages the current program occupies
-            int numP = calcPagesHelper(pSize);
-
-            // The new size in bytes
-            int newSize = pSize - size;
+            log('s', progID, size);
+            int newSize = prog.bytes - size;
 
             // The new size in terms of pages
             int ans = calcPagesHelper(newSize);
 
-            // The amount to shrink by
-            int shrinkBy = numP-ans;
+            if (paging != null) {
+                paging.release(prog, ans);
+            }
+            prog.asid = 0;
+
+            prog.bytes = newSize;
+            bytesInUse -= size;
+            pagesOccupied -= shrinkTo(prog, ans);
+            out.emit(Outcome.SHRANK, progID, size, newSize);
+        }
+
+    }
 
-            for (int i = programsArray[progID].prog_usage.size(); shrinkBy > 0; i--) {
+    /**
+     * Moves 'numPages' pages from the pool to 'prog'. With huge pages on,
+     * every whole huge page of the request is taken as an aligned run of
+     * hugeFactor pages while the pool has one, and so is a last part of at
+     * least hugeFill percent of a huge page, which costs the rest of it as
+     * internal fragmentation. The other pages are base pages, which are
+     * promoted where they line up, see promote.
+     *
+     * @param prog     ProgInfo
+     * @param numPages Integer
+     * @return Integer the number of pages 'prog' got, which may be more than 'numPages'
+     */
+    private int allocatePages(ProgInfo prog, int numPages) {
+        if (batching) {
+            if (prog.pending == 0 && numPages > 0) {
+                if (batchProgCount == batchProgs.length) {
+                    batchProgs = Arrays.copyOf(batchProgs, 2 * batchProgCount);
+                }
+                batchProgs[batchProgCount++] = prog;
+            }
+            prog.pending += numPages;
+            batchOwed += numPages;
+            return numPages;
+        }
+        if (numPages > 0 && !prog.prog_usage.isEmpty()) {
+            // New pages may land before the ones the program has, which
+            // moves its later virtual pages, so its translations go
+            prog.asid = 0;
+        }
+        if (hugeFactor == 0) {
+            return freePageList.allocate(numPages, prog.prog_usage);
+        }
+        int got = 0;
+        while (numPages - got >= hugeFactor
+                || (numPages > got && (long) (numPages - got) * 100 >= (long) hugeFactor * hugeFill)) {
+            int start = freePageList.allocateAligned(hugeFactor, hugeFactor);
+            if (start < 0) {
+                break;
+            }
+            if (prog.huge == null) {
+                prog.huge = new List<PageUsage>(offHeap);
+            }
+            prog.huge.add(prog.huge.size() + 1, start, start + hugeFactor - 1);
+            hugePagesInUse++;
+            prog.asid = 0;
+            got += hugeFactor;
+        }
+        if (got < numPages) {
+            got += freePageList.allocate(numPages - got, prog.prog_usage);
+            promote(prog);
+        }
+        return got;
+    }
 
-                // Temporary PageUsage object
-                PageUsage curr = programsArray[progID].prog_usage.get(i);
+    /**
+     * Turns every aligned run of hugeFactor base pages of 'prog' into a huge
+     * page. A run may go over several extents that touch.
+     *
+     * @param prog ProgInfo
+     */
+    private void promote(ProgInfo prog) {
+        List<PageUsage> base = prog.prog_usage;
+        int extents = prog.prog_usage.size();
+        boolean promoted = false;
+        scratch.removeAll();
+
+        int i = 1;
+        while (i <= extents) {
+            int first = i;
+            int runStart = base.getStart(i);
+            int runEnd = base.getEnd(i);
+            while (i < extents && base.getStart(i + 1) == runEnd + 1) {
+                i++;
+                runEnd = base.getEnd(i);
+            }
+            i++;
 
-                int pages = (curr.getEnd()-curr.getStart()) +1;
+            long page = ((long) runStart + hugeFactor - 1) / hugeFactor * hugeFactor;
+            if (page + hugeFactor - 1 > runEnd) {
+                for (int j = first; j < i; j++) {
+                    scratch.add(scratch.size() + 1, base.getStart(j), base.getEnd(j));
+                }
+                continue;
+            }
+            if (page > runStart) {
+                scratch.add(scratch.size() + 1, runStart, (int) page - 1);
+            }
+            if (prog.huge == null) {
+                prog.huge = new List<PageUsage>(offHeap);
+            }
+            for (; page + hugeFactor - 1 <= runEnd; page += hugeFactor) {
+                prog.huge.add(prog.huge.size() + 1, (int) page, (int) page + hugeFactor - 1);
+                hugePagesInUse++;
+                promotions++;
+            }
+            if (page <= runEnd) {
+                scratch.add(scratch.size() + 1, (int) page, runEnd);
+            }
+            promoted = true;
+        }
 
-                if (pages <= shrinkBy) {
-                    programsArray[progID].prog_usage.remove(i);
-                    programsArray[progID].bytes -= size;
-                    putInOrder(curr, freePageList);
-                    shrinkBy -= pages;
-                } else {
-                    putInOrder(new PageUsage(curr.getEnd() - pages, curr.getEnd()), freePageList);
-                    shrinkBy = 0;
+        if (promoted) {
+            base.removeAll();
+            for (int j = 1; j <= scratch.size(); j++) {
+                base.add(j, scratch.getStart(j), scratch.getEnd(j));
+            }
+            prog.asid = 0;
+        }
+    }
+
+    /**
+     * Shrinks 'prog' to 'numPages' pages, giving back base pages from the
+     * end first. A huge page that is cut is demoted to base pages, unless at
+     * least hugeFill percent of it is still used, when it is kept whole.
+     *
+     * @param prog     ProgInfo
+     * @param numPages Integer
+     * @return Integer the number of pages given back to the pool
+     */
+    private int shrinkTo(ProgInfo prog, int numPages) {
+        List<PageUsage> huge = prog.huge;
+        int count = huge == null ? 0 : huge.size();
+        while (count > 0 && (long) count * hugeFactor > numPages) {
+            int used = numPages - (count - 1) * hugeFactor;
+            if (used > 0 && (long) used * 100 >= (long) hugeFactor * hugeFill) {
+                break;
+            }
+            putInOrder(huge.getStart(count), huge.getEnd(count), prog.prog_usage);
+            huge.remove(count);
+            count--;
+            hugePagesInUse--;
+            demotions++;
+        }
+        return trimBase(prog, Math.max(0, numPages - count * hugeFactor));
+    }
+
+    /**
+     * Gives back the base pages of 'prog' beyond the first 'keep', from the
+     * end. In a batch the pages it was promised but has not got yet go
+     * first, and the rest are held in batchFrees, see executeBatch.
+     *
+     * @param prog ProgInfo
+     * @param keep Integer
+     * @return Integer the number of pages given back
+     */
+    private int trimBase(ProgInfo prog, int keep) {
+        if (!batching) {
+            return prog.prog_usage.trimTo(keep, freePageList);
+        }
+        int held = prog.prog_usage.getPageCount() + prog.pending;
+        int cancel = Math.max(0, Math.min(prog.pending, held - keep));
+        prog.pending -= cancel;
+        batchOwed -= cancel;
+        int moved = prog.prog_usage.trimTo(Math.max(0, keep - prog.pending), batchFrees);
+        batchFreed += moved;
+        return cancel + moved;
+    }
+
+    /**
+     * Gives every huge page of 'prog' back to the pool.
+     *
+     * @param prog ProgInfo
+     * @return Integer the number of pages given back
+     */
+    private int releaseHuge(ProgInfo prog) {
+        if (prog.huge == null) {
+            return 0;
+        }
+        for (int i = 1; i <= prog.huge.size(); i++) {
+            freePageList.free(prog.huge.getStart(i), prog.huge.getEnd(i));
+        }
+        int pages = prog.huge.size() * hugeFactor;
+        hugePagesInUse -= prog.huge.size();
+        prog.huge.removeAll();
+        return pages;
+    }
+
+    /**
+     * Demotes the huge pages of every program to base pages.
+     */
+    private void demoteAll() {
+        for (int slot = 0; slot < programs.capacity(); slot++) {
+            ProgInfo prog = programs.getSlot(slot);
+            if (programs.inUse(slot) && prog.huge != null && prog.huge.size() > 0) {
+                for (int i = 1; i <= prog.huge.size(); i++) {
+                    putInOrder(prog.huge.getStart(i), prog.huge.getEnd(i), prog.prog_usage);
                 }
+                demotions += prog.huge.size();
+                hugePagesInUse -= prog.huge.size();
+                prog.huge.removeAll();
+                prog.asid = 0;
             }
-            System.out.printf("%nProgram %d decreased by %d, new size = %d%n", progID, size, newSize);
         }
+    }
 
+    /**
+     * Gets the number of pages 'prog' holds, base and huge, counting those
+     * it was promised in a batch.
+     *
+     * @param prog ProgInfo
+     * @return Integer
+     */
+    private int pagesHeld(ProgInfo prog) {
+        return prog.prog_usage.getPageCount() + prog.pending
+                + (prog.huge == null ? 0 : prog.huge.size() * hugeFactor);
     }
 
-    public static void main(String[] args) {
+    public int getHugeFactor() {
+        return hugeFactor;
+    }
 
-        Scanner scan = new Scanner(System.in);
+    public int getHugePageCount() {
+        return hugePagesInUse;
+    }
 
-        // 'i' for initiate, 't' for terminate, 'p' for print, 'x' to exit
-        char opcode;
+    public long getPromotions() {
+        return promotions;
+    }
 
-        // Program ID
-        int progID;
+    public long getDemotions() {
+        return demotions;
+    }
 
-        // Specifies how many bytes are need by the program
-        int size;
+    /**
+     * Gets the pages the programs hold beyond what their sizes need, which
+     * huge pages (and a buddy pool) add to the internal fragmentation.
+     *
+     * @return Long
+     */
+    public long getSlackPages() {
+        long slack = 0;
+        for (int slot = 0; slot < programs.capacity(); slot++) {
+            if (programs.inUse(slot)) {
+                ProgInfo prog = programs.getSlot(slot);
+                slack += Math.max(0, pagesHeld(prog) - calcPagesHelper(prog.bytes));
+            }
+        }
+        return slack;
+    }
 
-        // Free page list
-        List<PageUsage> freePageList = new List<PageUsage>();
-        freePageList.add(1, new PageUsage(0, NUM_PAGES - 1)); // Logical position 1
-
-        // Programs array
-        ProgInfo programsArray[] = new ProgInfo[NUM_PROGRAMS];
-
-        // Initializing the programs array
-        for (int i = 0; i < programsArray.length; i++) {
-            programsArray[i] = new ProgInfo();
-            programsArray[i].bytes = -1;
-            programsArray[i].prog_usage = new List<PageUsage>();
-        }
-
-        while (scan.hasNext()) {
-
-            opcode = scan.next().trim().charAt(0);
-            progID = scan.nextInt();
-            size = scan.nextInt();
-            switch (opcode) {
-                case 'i':
-                    handleInitiate(programsArray, progID, size, freePageList);
-                    break;
-                case 't':
-                    handleTerminate(programsArray, progID, freePageList);
-                    break;
-                case 'p':
-                    handlePrint(programsArray, progID, freePageList);
-                    break;
-                case 'x':
-                    handleExit(programsArray);
-                    break;
-                case 'g':
-                    handleGrow(programsArray, freePageList, progID, size);
-                    break;
-                case 's':
-                    handleShrink(programsArray, freePageList, progID, size);
-                    break;
-                default:
-                    System.out.println("%nSelection not found%n");
-                    break;
+    /**
+     * Accesses byte 'address' of a program, which faults its page in when it
+     * is not resident, see PagingUnit.
+     *
+     * @param progID  Integer
+     * @param address Integer
+     */
+    public void handleAccess(int progID, int address) {
+        ProgInfo prog = programs.get(progID);
+        if (paging == null && tlb == null) {
+            out.emit(Outcome.ACCESS_NO_FRAMES, 0, 0, 0);
+        } else if (prog == null) {
+            out.emit(Outcome.ACCESS_MISSING, progID, 0, 0);
+        } else if (address < 0 || address >= prog.bytes) {
+            out.emit(Outcome.ACCESS_OUT_OF_RANGE, address, progID, 0);
+        } else if (paging == null) {
+            int page = translate(prog, address / pageSize);
+            if (page == Tlb.MISS) {
+                out.emit(Outcome.ACCESS_OUT_OF_RANGE, address, progID, 0);
+            } else {
+                out.emit(Outcome.ACCESS_TRANSLATED, progID, address, page);
+            }
+        } else {
+            if (tlb != null) {
+                translate(prog, address / pageSize);
+            }
+            int frame = paging.access(prog, address / pageSize);
+            if (frame >= 0) {
+                out.emit(Outcome.ACCESS_HIT, progID, address, frame);
+            } else {
+                out.emit(Outcome.ACCESS_FAULT, progID, address, -1 - frame);
             }
+        }
+    }
+
+    /**
+     * Translates virtual page 'page' of 'prog' to the page it has in memory
+     * through the TLB, walking its page list on a miss.
+     *
+     * @param prog ProgInfo
+     * @param page Integer
+     * @return Integer the physical page, Tlb.MISS when 'prog' has no such page
+     */
+    private int translate(ProgInfo prog, int page) {
+        if (prog.asid == 0) {
+            prog.asid = nextAsid();
+        }
 
+        // Huge pages come first in the address space of a program
+        int huge = prog.huge == null ? 0 : prog.huge.size();
+        if (page < (long) huge * hugeFactor && hugeTlb != null) {
+            int start = hugeTlb.lookup(prog.asid, page / hugeFactor);
+            if (start != Tlb.MISS) {
+                prog.tlbHits++;
+                return start + page % hugeFactor;
+            }
+            prog.tlbMisses++;
+            start = prog.huge.getStart(page / hugeFactor + 1);
+            hugeTlb.insert(prog.asid, page / hugeFactor, start);
+            return start + page % hugeFactor;
+        }
+
+        int physical = tlb.lookup(prog.asid, page);
+        if (physical != Tlb.MISS) {
+            prog.tlbHits++;
+            return physical;
+        }
+        prog.tlbMisses++;
+
+        if (page < (long) huge * hugeFactor) {
+            physical = prog.huge.getStart(page / hugeFactor + 1) + page % hugeFactor;
+            tlb.insert(prog.asid, page, physical);
+            return physical;
+        }
+        List<PageUsage> pages = prog.prog_usage;
+        int offset = page - huge * hugeFactor;
+        for (int i = 1; i <= pages.size(); i++) {
+            if (offset < pages.getPages(i)) {
+                physical = pages.getStart(i) + offset;
+                tlb.insert(prog.asid, page, physical);
+                return physical;
+            }
+            offset -= pages.getPages(i);
+        }
+        return Tlb.MISS;
+    }
+
+    /**
+     * Hands out an unused ASID. When they run out the TLB is flushed and
+     * every program gets a new one as it next runs.
+     *
+     * @return Integer
+     */
+    private int nextAsid() {
+        if (lastAsid == Integer.MAX_VALUE) {
+            tlb.flush();
+            if (hugeTlb != null) {
+                hugeTlb.flush();
+            }
+            for (int slot = 0; slot < programs.capacity(); slot++) {
+                if (programs.inUse(slot)) {
+                    programs.getSlot(slot).asid = 0;
+                }
+            }
+            lastAsid = 0;
+        }
+        return ++lastAsid;
+    }
+
+    /**
+     * Gets the TLB.
+     *
+     * @return Tlb, null when there is none
+     */
+    public Tlb getTlb() {
+        return tlb;
+    }
+
+    public Tlb getHugeTlb() {
+        return hugeTlb;
+    }
+
+    public long getTlbHits() {
+        return tlb.getHits() + (hugeTlb == null ? 0 : hugeTlb.getHits());
+    }
+
+    public long getTlbMisses() {
+        return tlb.getMisses() + (hugeTlb == null ? 0 : hugeTlb.getMisses());
+    }
+
+    /**
+     * Gets the pages the TLBs can translate at once, with a huge page per
+     * entry of the huge page TLB.
+     *
+     * @return Long
+     */
+    public long getTlbReach() {
+        return tlb.getEntries() + (hugeTlb == null ? 0 : (long) hugeTlb.getEntries() * hugeFactor);
+    }
+
+    /**
+     * Gets the running programs with the most TLB misses, most first.
+     *
+     * @param n Integer, how many at most
+     * @return ProgInfo[]
+     */
+    public ProgInfo[] mostTlbMisses(int n) {
+        ProgInfo top[] = new ProgInfo[n];
+        int count = 0;
+        for (int slot = 0; slot < programs.capacity(); slot++) {
+            if (!programs.inUse(slot) || programs.getSlot(slot).tlbMisses == 0) {
+                continue;
+            }
+            ProgInfo prog = programs.getSlot(slot);
+            int i = Math.min(count, n - 1);
+            if (count == n && top[i].tlbMisses >= prog.tlbMisses) {
+                continue;
+            }
+            while (i > 0 && top[i - 1].tlbMisses < prog.tlbMisses) {
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = prog;
+            count = Math.min(count + 1, n);
+        }
+        return Arrays.copyOf(top, count);
+    }
+
+    /**
+     * Compacts memory, moving up to 'budget' pages (all that need it when
+     * 'budget' is 0), see compact.
+     *
+     * @param budget Integer
+     */
+    public void handleCompact(int budget) {
+        log('d', 0, budget);
+        int moved = compact(Math.max(0, budget));
+        out.emit(Outcome.COMPACTED, moved, getFreeExtentCount(), 0);
+    }
+
+    /**
+     * Compacts when -compactAt is set and the free pages are split into
+     * more extents than that. It is logged as a 'd', since it also follows
+     * commands that fail and are not logged, and recover replays the 'd'
+     * instead of compacting by itself.
+     */
+    private void autoCompact() {
+        if (!batching && !recovering && compactAt > 0 && getFreeExtentCount() > compactAt) {
+            log('d', 0, compactBudget);
+            compact(compactBudget);
+        }
+    }
+
+    /**
+     * Moves programs down in memory, in the order of their lowest page, so
+     * that each gets one run of pages right after the one before it. Once
+     * every program has been moved all free pages are one extent at the top.
+     * A page counts as moved when its place changes; pages that are already
+     * where they belong stay.
+     *
+     * With a 'budget', compaction stops after the program that brings the
+     * pages moved to 'budget' or more, so a single call never takes long, and
+     * the next call carries on where it stopped, as the programs already in
+     * place move no pages. Programs not placed yet may still have pages
+     * below that point; those are swapped into pages the placed programs
+     * left, of which there are always enough. Each call sorts the programs
+     * and rebuilds the free list, which takes O(P log P + F) time for P
+     * programs and F free extents, on top of the pages moved. The frames of
+     * demand paging move like one more program.
+     *
+     * @param budget Integer, pages to move at most, 0 for no limit
+     * @return Integer the number of pages moved
+     */
+    public int compact(int budget) {
+
+        // Huge pages would not stay aligned, the placed programs are
+        // promoted again at the end
+        if (hugeFactor > 0) {
+            demoteAll();
+        }
+
+        // Programs with pages, by lowest page; slot capacity() is the frames
+        long order[] = new long[programs.size() + 1];
+        int count = 0;
+        for (int slot = 0; slot <= programs.capacity(); slot++) {
+            List<PageUsage> pages = pagesOf(slot);
+            if (pages != null) {
+                order[count++] = ((long) pages.getStart(1) << 32) | slot;
+            }
+        }
+        Arrays.sort(order, 0, count);
+
+        // Old pages of the moved programs
+        FreePageIndex left = new FreePageIndex();
+        int target = 0;
+        int moved = 0;
+        int k = 0;
+        while (k < count && (budget == 0 || moved < budget)) {
+            List<PageUsage> pages = pagesOf((int) order[k]);
+            int offset = 0;
+            int extents = pages.size();
+            for (int i = 1; i <= extents; i++) {
+                int start = pages.getStart(i);
+                if (start != target + offset) {
+                    moved += pages.getPages(i);
+                    left.free(start, pages.getEnd(i));
+                }
+                offset += pages.getPages(i);
+            }
+            if (extents > 1 || pages.getStart(1) != target) {
+                pages.removeAll();
+                pages.add(1, target, target + offset - 1);
+            }
+            target += offset;
+            k++;
+        }
+        int placed = k;
+
+        // Pages below 'target' of programs still to be placed, which can
+        // only be those whose lowest page is below it, take the place of
+        // pages the placed programs left at or above 'target'
+        FreePageIndex spare = new FreePageIndex();
+        for (int node = left.first(); node != FreePageIndex.NULL; node = left.next(node)) {
+            if (left.getEnd(node) >= target) {
+                spare.free(Math.max(target, left.getStart(node)), left.getEnd(node));
+            }
+        }
+        for (; k < count && (int) (order[k] >>> 32) < target; k++) {
+            moved += evict(pagesOf((int) order[k]), target, spare);
+        }
+
+        if (moved > 0) {
+            // Free pages are what was free or left spare, above the placed programs
+            List<PageUsage> free = new List<PageUsage>();
+            freePageList.copyFreeExtents(free);
+            freePageList.removeAll();
+            for (int i = 1; i <= free.size(); i++) {
+                int start = Math.max(target, free.getStart(i));
+                if (start <= free.getEnd(i)) {
+                    freePageList.free(start, free.getEnd(i));
+                }
+            }
+            for (int node = spare.first(); node != FreePageIndex.NULL; node = spare.next(node)) {
+                freePageList.free(spare.getStart(node), spare.getEnd(node));
+            }
+            pagesMoved += moved;
+            if (tlb != null) {
+                tlb.flush();
+            }
+            if (hugeTlb != null) {
+                hugeTlb.flush();
+            }
+        }
+        if (hugeFactor > 0) {
+            for (int j = 0; j < placed; j++) {
+                if ((int) order[j] != programs.capacity()) {
+                    promote(programs.getSlot((int) order[j]));
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Gets the pages of the program in 'slot' for compact, where slot
+     * capacity() stands for the frames of demand paging.
+     *
+     * @param slot Integer
+     * @return List<PageUsage>, null when there are no pages
+     */
+    private List<PageUsage> pagesOf(int slot) {
+        if (slot == programs.capacity()) {
+            return paging == null ? null : paging.getPages();
+        }
+        return programs.inUse(slot) && programs.getSlot(slot).prog_usage.size() > 0
+                ? programs.getSlot(slot).prog_usage : null;
+    }
+
+    /**
+     * Moves the 'pages' below 'limit' to pages taken from 'spare', which
+     * must have enough.
+     *
+     * @param pages List<PageUsage>
+     * @param limit Integer
+     * @param spare FreePageIndex
+     * @return Integer the number of pages moved
+     */
+    private static int evict(List<PageUsage> pages, int limit, FreePageIndex spare) {
+        List<PageUsage> kept = new List<PageUsage>();
+        int need = 0;
+        for (int i = 1; i <= pages.size(); i++) {
+            int start = pages.getStart(i);
+            int end = pages.getEnd(i);
+            if (start < limit) {
+                need += Math.min(end, limit - 1) - start + 1;
+                start = limit;
+            }
+            if (start <= end) {
+                kept.add(kept.size() + 1, start, end);
+            }
+        }
+        int moved = need;
+        while (need > 0) {
+            int node = spare.first();
+            int take = Math.min(need, spare.getPages(node));
+            putInOrder(spare.getStart(node), spare.getStart(node) + take - 1, kept);
+            spare.takeFront(node, take);
+            need -= take;
+        }
+        pages.removeAll();
+        for (int i = 1; i <= kept.size(); i++) {
+            pages.add(i, kept.getStart(i), kept.getEnd(i));
+        }
+        return moved;
+    }
+
+    /**
+     * Saves the state as snapshot 'number' in the snapshot directory. When
+     * journaling, a new journal segment is started after it.
+     *
+     * @param number Integer
+     */
+    public void handleCheckpoint(int number) {
+        try {
+            saveSnapshot(snapshotPath(number));
+            if (journal != null) {
+                journal.roll(sequence);
+            }
+            out.emit(Outcome.CHECKPOINTED, number, programs.size(), 0);
+        } catch (IOException e) {
+            System.err.println(e);
+            out.emit(Outcome.CHECKPOINT_FAILED, number, 0, 0);
+        }
+    }
+
+    /**
+     * Replaces the state with snapshot 'number' from the snapshot directory.
+     *
+     * @param number Integer
+     */
+    public void handleRestore(int number) {
+        Path path = snapshotPath(number);
+        try {
+            checkSnapshot(path);
+            log('r', number, 0);
+            applySnapshot(path);
+            out.emit(Outcome.RESTORED, number, programs.size(), 0);
+        } catch (IOException e) {
+            System.err.println(e);
+            out.emit(Outcome.RESTORE_FAILED, number, 0, 0);
+        }
+    }
+
+    /**
+     * Gets the file of snapshot 'number'.
+     *
+     * @param number Integer
+     * @return Path
+     */
+    public Path snapshotPath(int number) {
+        return Paths.get(snapshotDir, "snapshot-" + number + ".msnap");
+    }
+
+    /**
+     * Writes the whole state of the simulator to the file 'path', through a
+     * memory mapping. The file holds ints only:
+     *
+     *   SnapshotFile.MAGIC, SnapshotFile.VERSION,
+     *   NUM_PAGES, NUM_PROGRAMS, MAX_SIZE, PAGE_SIZE,
+     *   operations so far (a long, see Journal), pages occupied, bytes in use (a long), free extents, programs,
+     *   start and end page of every free extent,
+     *   for every program: id, bytes, huge pages, extents, and the start and
+     *   end page of every huge page and then of every extent.
+     *
+     * A huge page of another size than -hugePages is put back as base pages.
+     *
+     * The file is written next to 'path' and then renamed, so a crash while
+     * saving leaves any older snapshot 'path' as it was.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be written
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        List<PageUsage> free = new List<PageUsage>();
+        freePageList.copyFreeExtents(free);
+
+        long ints = 13 + 2L * free.size();
+        for (int slot = 0; slot < programs.capacity(); slot++) {
+            if (programs.inUse(slot)) {
+                ProgInfo prog = programs.getSlot(slot);
+                ints += 4 + 2L * prog.prog_usage.size() + 2L * (prog.huge == null ? 0 : prog.huge.size());
+            }
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (SnapshotFile file = SnapshotFile.create(temp, ints)) {
+            file.putInt(SnapshotFile.MAGIC);
+            file.putInt(SnapshotFile.VERSION);
+            file.putInt(numPages);
+            file.putInt(numPrograms);
+            file.putInt(maxSize);
+            file.putInt(pageSize);
+            file.putLong(sequence);
+            file.putInt(pagesOccupied);
+            file.putLong(bytesInUse);
+            file.putInt(free.size());
+            file.putInt(programs.size());
+
+            for (int i = 1; i <= free.size(); i++) {
+                file.putInt(free.getStart(i));
+                file.putInt(free.getEnd(i));
+            }
+            for (int slot = 0; slot < programs.capacity(); slot++) {
+                ProgInfo prog = programs.getSlot(slot);
+                if (programs.inUse(slot)) {
+                    List<PageUsage> pages = prog.prog_usage;
+                    int extents = prog.prog_usage.size();
+                    int huge = prog.huge == null ? 0 : prog.huge.size();
+                    file.putInt(prog.id);
+                    file.putInt(prog.bytes);
+                    file.putInt(huge);
+                    file.putInt(extents);
+                    for (int i = 1; i <= huge; i++) {
+                        file.putInt(prog.huge.getStart(i));
+                        file.putInt(prog.huge.getEnd(i));
+                    }
+                    for (int i = 1; i <= extents; i++) {
+                        file.putInt(pages.getStart(i));
+                        file.putInt(pages.getEnd(i));
+                    }
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the whole state of the simulator with the snapshot in the file
+     * 'path'. The snapshot must be for the same NUM_PAGES and PAGE_SIZE, and
+     * hold no more than NUM_PROGRAMS programs. The file is checked completely
+     * before anything is changed, so the state is kept when it is not valid.
+     * The count of operations carries on from the one in the snapshot.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be read or is not valid
+     */
+    public void loadSnapshot(Path path) throws IOException {
+        checkSnapshot(path);
+        sequence = applySnapshot(path);
+    }
+
+    /**
+     * Reads the snapshot in the file 'path' without changing anything.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be read or is not valid
+     */
+    private void checkSnapshot(Path path) throws IOException {
+        try (SnapshotFile file = SnapshotFile.open(path)) {
+            readSnapshot(file, false);
+        }
+    }
+
+    /**
+     * Replaces the whole state with the snapshot in the file 'path', which
+     * checkSnapshot has found valid.
+     *
+     * @param path Path
+     * @return Long the count of operations stored in the snapshot
+     * @throws IOException when the file cannot be read
+     */
+    private long applySnapshot(Path path) throws IOException {
+
+        // Empties the simulator
+        if (paging != null) {
+            paging.releaseAll();
+        }
+        if (tlb != null) {
+            tlb.flush();
+        }
+        if (hugeTlb != null) {
+            hugeTlb.flush();
+        }
+        hugePagesInUse = 0;
+        for (int slot = 0; slot < programs.capacity(); slot++) {
+            ProgInfo prog = programs.getSlot(slot);
+            if (programs.inUse(slot)) {
+                prog.prog_usage.removeAll();
+                if (prog.huge != null) {
+                    prog.huge.removeAll();
+                }
+                programs.remove(prog.id);
+            }
+        }
+        freePageList.removeAll();
+
+        long operations;
+        try (SnapshotFile file = SnapshotFile.open(path)) {
+            operations = readSnapshot(file, true);
+        }
+        if (paging != null) {
+            retakeFrames();
+        }
+        return operations;
+    }
+
+    /**
+     * Takes the frames of demand paging again after a snapshot is put in
+     * place. Pages that are neither free nor any program's held the frames
+     * of the run that saved it, if it paged, and are given back first.
+     *
+     * @throws IOException when the pages left are too few for the frames
+     */
+    private void retakeFrames() throws IOException {
+        FreePageIndex held = new FreePageIndex();
+        List<PageUsage> free = new List<PageUsage>();
+        freePageList.copyFreeExtents(free);
+        for (int i = 1; i <= free.size(); i++) {
+            held.free(free.getStart(i), free.getEnd(i));
+        }
+        for (int slot = 0; slot < programs.capacity(); slot++) {
+            if (programs.inUse(slot)) {
+                List<PageUsage> pages = programs.getSlot(slot).prog_usage;
+                for (int i = 1; i <= pages.size(); i++) {
+                    held.free(pages.getStart(i), pages.getEnd(i));
+                }
+                List<PageUsage> huge = programs.getSlot(slot).huge;
+                for (int i = 1; huge != null && i <= huge.size(); i++) {
+                    held.free(huge.getStart(i), huge.getEnd(i));
+                }
+            }
+        }
+        int from = 0;
+        for (int node = held.first(); node != FreePageIndex.NULL; node = held.next(node)) {
+            if (held.getStart(node) > from) {
+                freePageList.free(from, held.getStart(node) - 1);
+            }
+            from = held.getEnd(node) + 1;
+        }
+        if (from < numPages) {
+            freePageList.free(from, numPages - 1);
+        }
+
+        paging.getPages().removeAll();
+        if (!takeFrames(paging.getFrameCount(), paging.getPages())) {
+            throw new IOException("snapshot leaves too few pages for " + paging.getFrameCount() + " frames");
+        }
+    }
+
+    /**
+     * Gets the count of operations stored in the snapshot in the file 'path'.
+     *
+     * @param path Path
+     * @return Long, -1 when the file is not a snapshot of this version
+     * @throws IOException when the file cannot be read
+     */
+    private static long snapshotSequence(Path path) throws IOException {
+        try (SnapshotFile file = SnapshotFile.open(path)) {
+            if (file.getInt() != SnapshotFile.MAGIC || file.getInt() != SnapshotFile.VERSION) {
+                return -1;
+            }
+            for (int i = 0; i < 4; i++) {
+                file.getInt();   // NUM_PAGES, NUM_PROGRAMS, MAX_SIZE, PAGE_SIZE
+            }
+            return file.getLong();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads a snapshot, checking every value, and when 'apply' is set puts
+     * it into the simulator, which must be empty.
+     *
+     * @param file  SnapshotFile
+     * @param apply Boolean
+     * @return Long the count of operations stored in the snapshot
+     * @throws IOException when the snapshot is not valid
+     */
+    private long readSnapshot(SnapshotFile file, boolean apply) throws IOException {
+        if (file.getInt() != SnapshotFile.MAGIC || file.getInt() != SnapshotFile.VERSION) {
+            throw new IOException("not a snapshot file of this version");
+        }
+        int pages = file.getInt();
+        file.getInt();   // NUM_PROGRAMS and MAX_SIZE of the run that saved it
+        file.getInt();
+        int size = file.getInt();
+        if (pages != numPages || size != pageSize) {
+            throw new IOException("snapshot is for " + pages + " pages of " + size
+                    + " bytes, not " + numPages + " pages of " + pageSize);
+        }
+        long operations = file.getLong();
+        int occupied = file.getInt();
+        long bytes = file.getLong();
+        int numFree = file.getInt();
+        int numProgs = file.getInt();
+        if (operations < 0) {
+            throw new IOException("snapshot is damaged");
+        }
+        if (numProgs < 0 || numProgs > numPrograms || numFree < 0) {
+            throw new IOException("snapshot has " + numProgs + " programs, at most "
+                    + numPrograms + " may exist");
+        }
+        if (paging != null && numPages - occupied < paging.getFrameCount()) {
+            throw new IOException("snapshot leaves too few pages for " + paging.getFrameCount() + " frames");
+        }
+
+        for (int i = 0; i < numFree; i++) {
+            int start = file.getInt();
+            int end = file.getInt();
+            checkExtent(start, end);
+            if (apply) {
+                freePageList.free(start, end);
+            }
+        }
+        for (int p = 0; p < numProgs; p++) {
+            int id = file.getInt();
+            int progBytes = file.getInt();
+            int huge = file.getInt();
+            int extents = file.getInt();
+            if (id < 0 || huge < 0 || extents < 0) {
+                throw new IOException("snapshot is damaged");
+            }
+            ProgInfo prog = apply ? programs.add(id) : null;
+            if (apply) {
+                prog.bytes = progBytes;
+                scratch.removeAll();
+            }
+            for (int i = 0; i < huge; i++) {
+                int start = file.getInt();
+                int end = file.getInt();
+                checkExtent(start, end);
+                if (apply && hugeFactor > 0 && end - start + 1 == hugeFactor && start % hugeFactor == 0) {
+                    if (prog.huge == null) {
+                        prog.huge = new List<PageUsage>(offHeap);
+                    }
+                    prog.huge.add(prog.huge.size() + 1, start, end);
+                    hugePagesInUse++;
+                } else if (apply) {
+                    scratch.add(scratch.size() + 1, start, end);
+                }
+            }
+            for (int i = 0; i < extents; i++) {
+                int start = file.getInt();
+                int end = file.getInt();
+                checkExtent(start, end);
+                if (apply) {
+                    prog.prog_usage.add(prog.prog_usage.size() + 1, start, end);
+                }
+            }
+            for (int i = 1; apply && i <= scratch.size(); i++) {
+                putInOrder(scratch.getStart(i), scratch.getEnd(i), prog.prog_usage);
+            }
+        }
+
+        if (apply) {
+            pagesOccupied = occupied;
+            bytesInUse = bytes;
+        }
+        return operations;
+    }
+
+    private void checkExtent(int start, int end) throws IOException {
+        if (start < 0 || start > end || end >= numPages) {
+            throw new IOException("snapshot is damaged, extent " + start + " to " + end);
+        }
+    }
+
+    /**
+     * Starts logging every change to a journal in the directory 'dir', in a
+     * new segment after the operations so far.
+     *
+     * Unless the state was recovered from it, 'dir' must not hold a journal
+     * yet, and the snapshot directory no snapshot with more operations than
+     * the state: a later recover would take them for part of this run. After
+     * recover, a segment that starts where the replay ended holds nothing
+     * that was replayed, e.g. only a batch that was cut short, and is
+     * replaced.
+     *
+     * @param dir   Path
+     * @param group Integer, operations written and synced at a time
+     * @throws IOException when the journal cannot be created, or 'dir' or
+     *                     the snapshot directory hold files of another run
+     */
+    public void startJournal(Path dir, int group) throws IOException {
+        if (recovered) {
+            Files.deleteIfExists(Journal.segmentPath(dir, sequence));
+        } else {
+            if (Journal.segments(dir).length > 0) {
+                throw new IOException(dir + " already holds a journal, recover from it or use an empty directory");
+            }
+            Path latest = latestSnapshot();
+            if (latest != null && snapshotSequence(latest) > sequence) {
+                throw new IOException(latest + " is from a later state than this run starts with");
+            }
+        }
+        journal = new Journal(dir, sequence, group);
+    }
+
+    /**
+     * Writes out what is left of the journal and stops journaling.
+     *
+     * @throws IOException when writing fails
+     */
+    public void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Starts taking metrics of every command, see SimMetrics.
+     *
+     * @param file           Path, where samples are added, or null for none
+     * @param format         String, csv or json
+     * @param intervalMillis Long, time between samples
+     * @param jmx            boolean, whether to show the metrics over JMX
+     * @return SimMetrics
+     * @throws IOException when the file cannot be created
+     */
+    public SimMetrics startMetrics(Path file, String format, long intervalMillis, boolean jmx) throws IOException {
+        metrics = new SimMetrics(this, file, format, intervalMillis, jmx);
+        return metrics;
+    }
+
+    /**
+     * Takes a last sample of the metrics and stops taking them.
+     */
+    public void stopMetrics() {
+        if (metrics != null) {
+            metrics.close();
+            metrics = null;
+        }
+    }
+
+    /**
+     * Rebuilds the state after a crash: loads the snapshot in the snapshot
+     * directory that holds the most operations, then replays the operations
+     * of the journal in 'journalDir' that came after it, without output. The
+     * operations behind a 'b' are replayed as one run of a batch.
+     * Replay stops at the end of the last frame that was completely written.
+     *
+     * @param journalDir Path
+     * @return Long the number of operations replayed
+     * @throws IOException when a file cannot be read, or the journal is
+     *                     missing operations or does not match the snapshot
+     */
+    public long recover(Path journalDir) throws IOException {
+        Path latest = latestSnapshot();
+        if (latest != null) {
+            loadSnapshot(latest);
+        }
+        recovered = true;
+
+        OutputSink shown = out;
+        out = new QuietOutput();
+        long replayed = 0;
+        CommandArray run = new CommandArray();
+        recovering = true;
+        try {
+            for (long base : Journal.segments(journalDir)) {
+                try (JournalReader segment = new JournalReader(Journal.segmentPath(journalDir, base))) {
+                    if (segment.getBase() > sequence) {
+                        throw new IOException("journal is missing operations " + (sequence + 1)
+                                + " to " + segment.getBase());
+                    }
+                    while (segment.next()) {
+                        if (segment.getSequence() <= sequence) {
+                            continue;
+                        }
+                        long first = segment.getSequence();
+                        if (segment.getOpcode() == 'b') {
+                            // A run of a batch, replayed only when all of it was written
+                            int count = segment.getSize();
+                            run.clear();
+                            while (run.size() < count && segment.next()) {
+                                run.add(segment.getOpcode(), segment.getProgID(), segment.getSize());
+                            }
+                            if (run.size() < count) {
+                                break;
+                            }
+                            replayBatch(run);
+                        } else {
+                            execute(segment.getOpcode(), segment.getProgID(), segment.getSize());
+                        }
+                        if (sequence != segment.getSequence()) {
+                            throw new IOException("operation " + first
+                                    + " of the journal does not apply");
+                        }
+                        replayed += segment.getSequence() - first + 1;
+                    }
+                }
+            }
+        } finally {
+            out = shown;
+            recovering = false;
+        }
+        return replayed;
+    }
+
+    /**
+     * Finds the snapshot in the snapshot directory that holds the most
+     * operations.
+     *
+     * @return Path, null when there is none
+     * @throws IOException when the directory cannot be read
+     */
+    private Path latestSnapshot() throws IOException {
+        Path latest = null;
+        long latestSequence = -1;
+        Path dir = Paths.get(snapshotDir);
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.msnap")) {
+                for (Path file : files) {
+                    long fileSequence = snapshotSequence(file);
+                    if (fileSequence > latestSequence) {
+                        latest = file;
+                        latestSequence = fileSequence;
+                    }
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Counts an operation that changes the state, and logs it to the
+     * journal before it is made. While executeBatch holds the pool back the
+     * operation waits in batchLog, and is counted and logged by settleBatch.
+     *
+     * @param opcode Char
+     * @param progID Integer
+     * @param size   Integer
+     */
+    private void log(char opcode, int progID, int size) {
+        if (batching) {
+            batchLog.add(opcode, progID, size);
+            return;
+        }
+        sequence++;
+        if (journal != null) {
+            journal.append(opcode, progID, size);
+        }
+    }
+
+    /**
+     * Runs every command of 'scan', in order.
+     *
+     * @param scan CommandSource
+     * @return Long the number of commands run
+     * @throws IOException when reading a command fails
+     */
+    public long run(CommandSource scan) throws IOException {
+
+        // 'i' for initiate, 't' for terminate, 'p' for print, 'x' to exit
+        char opcode;
+
+        // Program ID
+        int progID;
+
+        // Specifies how many bytes are need by the program
+        int size;
+
+        long count = 0;
+        while (scan.next()) {
+
+            opcode = scan.getOpcode();
+            progID = scan.getProgID();
+            size = scan.getSize();
+            execute(opcode, progID, size);
+            count++;
+        }
+        if (batchLeft > 0) {
+            // The trace ended inside a batch
+            runBatch();
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        // Limits and modes of this run, see MemParam for the flags
+        MemParam params;
+        try {
+            params = MemParam.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        CommandSource scan;
+        if (params.trace == null) {
+            scan = new TraceReader(System.in);
+        } else if (BinaryTraceReader.isBinaryTrace(Paths.get(params.trace))) {
+            // Replays with the limits the binary trace was made for, unless overridden
+            BinaryTraceReader binary = new BinaryTraceReader(Paths.get(params.trace));
+            params = binary.getParams().apply(args);
+            scan = binary;
+        } else {
+            scan = new TraceReader(Paths.get(params.trace));
+        }
+        MemSim sim;
+        try {
+            sim = new MemSim(params);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            scan.close();
+            return;
+        }
+        if (params.recover) {
+            if (params.journal == null) {
+                System.err.println("-recover needs -journal");
+                scan.close();
+                return;
+            }
+            try {
+                long replayed = sim.recover(Paths.get(params.journal));
+                System.err.println("Recovered " + sim.getRunningCount() + " programs, "
+                        + replayed + " operations replayed from the journal");
+            } catch (IOException e) {
+                System.err.println("Cannot recover: " + e.getMessage());
+                scan.close();
+                return;
+            }
+        } else if (params.restore != null) {
+            try {
+                sim.loadSnapshot(Paths.get(params.restore));
+            } catch (IOException e) {
+                System.err.println("Cannot restore " + params.restore + ": " + e.getMessage());
+                scan.close();
+                return;
+            }
+        }
+
+        if (params.journal != null) {
+            try {
+                sim.startJournal(Paths.get(params.journal), params.journalGroup);
+            } catch (IOException e) {
+                System.err.println("Cannot start the journal: " + e.getMessage());
+                scan.close();
+                return;
+            }
+        }
+
+        try {
+            if (params.metrics != null || params.jmx) {
+                sim.startMetrics(params.metrics == null ? null : Paths.get(params.metrics),
+                        params.metricsFormat, params.metricsInterval, params.jmx);
+            }
+            sim.run(scan);
+        } finally {
+            scan.close();
+            sim.stopMetrics();
+            sim.closeJournal();
+            sim.getOutput().flush();
         }
     }
 }
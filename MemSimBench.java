@@ -0,0 +1,487 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Benchmarks for the allocator operations of the simulator.
+ *
+ * Every benchmark is run for a few warmup iterations and then for a few
+ * measured ones, each of which repeats the benchmark for a fixed time. For
+ * every measured operation it prints the mean throughput with its standard
+ * deviation over the iterations, and the bytes of heap allocated per operation
+ * (read from the thread's allocation counter, so it includes the garbage the
+ * operation leaves behind).
+ *
+ *   initiate, terminate   handleInitiate of an 8 page program, then
+ *                         handleTerminate of the same programs
+ *   grow, shrink          handleGrow and handleShrink by one page
+ *   putInOrder            MemSim.putInOrder of a random extent into a list
+ *   list add, get, remove List.add, List.get and List.remove at random positions
+ *   replay                MemSim.execute over a whole trace, per command
+ *
+ * The simulator benchmarks run with every pool in -pools, every pool size in
+ * -sizes and every fragmentation level in -frag. The level is the percentage
+ * of the free pages (half of the pool) that are single page holes between
+ * running programs; the rest is one free extent at the end of the pool.
+ * The replay benchmark uses a random trace of 1M commands for every pool
+ * size, or the file given with -trace. A text trace is replayed with the
+ * limits given by the MemParam flags, a binary one with those of its header.
+ *
+ * Options, all optional:
+ *
+ *   -benches <list>   initiate,grow,putInOrder,list,replay
+ *   -pools <list>     extent/first,extent/next,extent/best,extent/worst,buddy,bitmap
+ *   -sizes <list>     pool sizes in pages, 16384,1048576
+ *   -frag <list>      fragmentation levels in percent, 0,50,90
+ *   -lengths <list>   list lengths for putInOrder and list, 16,1024,16384
+ *   -time <ms>        length of one iteration, 500
+ *   -warmup <n>       warmup iterations, 2
+ *   -iterations <n>   measured iterations, 3
+ *   -trace <file>     trace to replay
+ *   -storage <name>   heap or offheap, where the simulators and lists keep
+ *                     their extents (see IntSlab), heap
+ *
+ * Run it with "mvn -Pbench verify", giving options with -Dbench.args="...".
+ */
+public class MemSimBench {
+
+    // Operations done between two looks at the clock
+    public static final int BATCH = 256;
+
+    // Size in pages of the programs started by the initiate benchmark
+    public static final int REQUEST = 8;
+
+    // Commands in a random trace for the replay benchmark
+    public static final int TRACE_LENGTH = 1 << 20;
+
+    // Results of the operations end up here, so that they cannot be optimized away
+    public static long sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * One piece of work of a benchmark.
+     */
+    private interface Phase {
+
+        /**
+         * Does the work for about 'n' operations.
+         *
+         * @param n Integer
+         * @return Long, the number of operations done
+         */
+        long run(int n);
+    }
+
+    private static long timeMillis = 500;
+    private static int warmup = 2;
+    private static int iterations = 3;
+    private static int seed = 0x2545F491;
+    private static String storage = "heap";
+
+    // The options of the class comment that are not MemParam flags, without the dash
+    public static final String OPTIONS[] = {"benches", "pools", "sizes", "frag", "lengths",
+            "time", "warmup", "iterations"};
+
+    public static void main(String[] args) throws IOException {
+        Properties options = new Properties();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.setProperty(args[i].substring(1), args[i + 1]);
+        }
+
+        String[] benches = options.getProperty("benches", "initiate,grow,putInOrder,list,replay").split(",");
+        String[] pools = options.getProperty("pools",
+                "extent/first,extent/next,extent/best,extent/worst,buddy,bitmap").split(",");
+        int[] sizes = intList(options.getProperty("sizes", "16384,1048576"));
+        int[] frags = intList(options.getProperty("frag", "0,50,90"));
+        int[] lengths = intList(options.getProperty("lengths", "16,1024,16384"));
+        timeMillis = Long.parseLong(options.getProperty("time", "500"));
+        warmup = Integer.parseInt(options.getProperty("warmup", "2"));
+        iterations = Integer.parseInt(options.getProperty("iterations", "3"));
+        String trace = options.getProperty("trace");
+        storage = options.getProperty("storage", storage);
+
+        System.out.printf("%-12s %-13s %9s %5s %15s %13s %10s%n",
+                "Benchmark", "Pool", "Size", "Frag", "ops/s", "+-", "B/op");
+
+        for (String bench : benches) {
+            switch (bench) {
+                case "initiate":
+                case "grow":
+                    for (String pool : pools) {
+                        for (int pages : sizes) {
+                            for (int frag : frags) {
+                                MemSim sim = fragmented(pages, frag, pool);
+                                Phase[] phases = bench.equals("initiate")
+                                        ? initiateTerminate(sim) : growShrink(sim);
+                                String[] names = bench.equals("initiate")
+                                        ? new String[] {"initiate", "terminate"}
+                                        : new String[] {"grow", "shrink"};
+                                measure(names, phases, pool, pages, frag);
+                            }
+                        }
+                    }
+                    break;
+                case "putInOrder":
+                    for (int length : lengths) {
+                        measure(new String[] {"putInOrder", null}, putInOrder(length), "-", length, -1);
+                    }
+                    break;
+                case "list":
+                    for (int length : lengths) {
+                        measure(new String[] {"list add", "list get", "list remove"},
+                                listOps(length), "-", length, -1);
+                    }
+                    break;
+                case "replay":
+                    CommandArray recorded = trace == null ? null : CommandArray.read(Paths.get(trace), args, OPTIONS);
+                    for (String pool : pools) {
+                        if (recorded != null) {
+                            measure(new String[] {null, "replay"}, replay(recorded, pool), pool,
+                                    recorded.getParams().numPages, -1);
+                        } else {
+                            for (int pages : sizes) {
+                                measure(new String[] {null, "replay"}, replay(randomTrace(pages), pool),
+                                        pool, pages, -1);
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown benchmark: " + bench);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Runs the phases of one benchmark in turn, BATCH operations at a time,
+     * and prints a line for every phase that has a name. Phases without a
+     * name are bookkeeping and are not measured.
+     *
+     * @param names  String[]
+     * @param phases Phase[]
+     * @param pool   String
+     * @param size   Integer
+     * @param frag   Integer, -1 when it does not apply
+     */
+    private static void measure(String[] names, Phase[] phases, String pool, int size, int frag) {
+        double[][] rates = new double[phases.length][iterations];
+        long[] bytes = new long[phases.length];
+        long[] measuredOps = new long[phases.length];
+
+        for (int iter = 0; iter < warmup + iterations; iter++) {
+            long[] nanos = new long[phases.length];
+            long[] ops = new long[phases.length];
+            long deadline = System.nanoTime() + timeMillis * 1000000L;
+
+            while (System.nanoTime() < deadline) {
+                for (int p = 0; p < phases.length; p++) {
+                    long allocated = THREADS.getCurrentThreadAllocatedBytes();
+                    long before = System.nanoTime();
+                    long done = phases[p].run(BATCH);
+                    nanos[p] += System.nanoTime() - before;
+                    ops[p] += done;
+                    if (iter >= warmup) {
+                        bytes[p] += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                    }
+                }
+            }
+
+            if (iter >= warmup) {
+                for (int p = 0; p < phases.length; p++) {
+                    rates[p][iter - warmup] = ops[p] * 1e9 / Math.max(1, nanos[p]);
+                    measuredOps[p] += ops[p];
+                }
+            }
+        }
+
+        for (int p = 0; p < phases.length; p++) {
+            if (names[p] == null) {
+                continue;
+            }
+            double mean = 0;
+            for (double rate : rates[p]) {
+                mean += rate;
+            }
+            mean /= iterations;
+            double var = 0;
+            for (double rate : rates[p]) {
+                var += (rate - mean) * (rate - mean);
+            }
+            double sd = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0;
+
+            System.out.printf("%-12s %-13s %9d %5s %15.0f %13.0f %10.1f%n", names[p], pool, size,
+                    frag < 0 ? "-" : frag + "%", mean, sd,
+                    (double) bytes[p] / Math.max(1, measuredOps[p]));
+        }
+    }
+
+    // ****************************************************
+    // Simulator benchmarks
+    // ****************************************************
+
+    /**
+     * Creates a simulator with one byte pages in which half of the pages are
+     * free, 'frag' percent of them as single page holes.
+     *
+     * @param pages Integer
+     * @param frag  Integer, 0 to 100
+     * @param pool  String, pool name with an optional "/policy"
+     * @return MemSim
+     */
+    private static MemSim fragmented(int pages, int frag, String pool) {
+        MemParam params = new MemParam();
+        params.numPages = pages;
+        params.numPrograms = pages + 2 * BATCH;
+        params.maxSize = Integer.MAX_VALUE;
+        params.pageSize = 1;
+        params.output = "quiet";
+        usePool(params, pool);
+        MemSim sim = new MemSim(params);
+
+        // Every page is taken by its own program, the ids are the page numbers
+        for (int id = 0; id < pages; id++) {
+            sim.handleInitiate(id, 1);
+        }
+
+        int free = pages / 2;
+        int holes = (int) ((long) free * frag / 100);
+        for (int i = 0; i < holes; i++) {
+            sim.handleTerminate(2 * i);
+        }
+        for (int id = pages - (free - holes); id < pages; id++) {
+            sim.handleTerminate(id);
+        }
+        return sim;
+    }
+
+    /**
+     * Starts BATCH programs of REQUEST pages, then terminates them again.
+     *
+     * @param sim MemSim
+     * @return Phase[]
+     */
+    private static Phase[] initiateTerminate(MemSim sim) {
+        int base = sim.numPages;
+        return new Phase[] {
+            n -> {
+                for (int id = base; id < base + BATCH; id++) {
+                    sim.handleInitiate(id, REQUEST);
+                }
+                return BATCH;
+            },
+            n -> {
+                for (int id = base; id < base + BATCH; id++) {
+                    sim.handleTerminate(id);
+                }
+                return BATCH;
+            }
+        };
+    }
+
+    /**
+     * Grows BATCH one page programs by one page, then shrinks them back.
+     *
+     * @param sim MemSim
+     * @return Phase[]
+     */
+    private static Phase[] growShrink(MemSim sim) {
+        int base = sim.numPages;
+        for (int id = base; id < base + BATCH; id++) {
+            sim.handleInitiate(id, 1);
+        }
+        return new Phase[] {
+            n -> {
+                for (int id = base; id < base + BATCH; id++) {
+                    sim.handleGrow(id, 1);
+                }
+                return BATCH;
+            },
+            n -> {
+                for (int id = base; id < base + BATCH; id++) {
+                    sim.handleShrink(id, 1);
+                }
+                return BATCH;
+            }
+        };
+    }
+
+    /**
+     * Replays a trace on a new simulator, with the trace's limits and the
+     * given pool; creating the simulator is not measured.
+     *
+     * @param commands CommandArray
+     * @param pool     String
+     * @return Phase[]
+     */
+    private static Phase[] replay(CommandArray commands, String pool) {
+        MemParam params = commands.getParams().copy();
+        params.output = "quiet";
+        usePool(params, pool);
+        MemSim[] sim = new MemSim[1];
+        return new Phase[] {
+            n -> {
+                sim[0] = new MemSim(params);
+                return 0;
+            },
+            n -> {
+                MemSim s = sim[0];
+                for (int i = 0; i < commands.size(); i++) {
+                    s.execute(commands.getOpcode(i), commands.getProgID(i), commands.getSize(i));
+                }
+                sink += s.getFreePageCount();
+                return commands.size();
+            }
+        };
+    }
+
+    // ****************************************************
+    // List benchmarks
+    // ****************************************************
+
+    /**
+     * Puts BATCH random extents in order into a list of 'length' extents,
+     * then puts the list back to 'length' extents (not measured).
+     *
+     * @param length Integer
+     * @return Phase[]
+     */
+    private static Phase[] putInOrder(int length) {
+        List<PageUsage> list = new List<PageUsage>(storage.equals("offheap"));
+        return new Phase[] {
+            n -> {
+                for (int i = 0; i < n; i++) {
+                    int start = nextRandom() & 0x3FFFFFFF;
+                    MemSim.putInOrder(start, start, list);
+                }
+                return n;
+            },
+            n -> {
+                list.removeAll();
+                for (int i = 0; i < length; i++) {
+                    list.add(i + 1, i << 16, i << 16);
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Adds, gets and removes items at random positions of a list of about
+     * 'length' extents.
+     *
+     * @param length Integer
+     * @return Phase[]
+     */
+    private static Phase[] listOps(int length) {
+        List<PageUsage> list = new List<PageUsage>(storage.equals("offheap"));
+        for (int i = 1; i <= length; i++) {
+            list.add(i, i, i);
+        }
+        return new Phase[] {
+            n -> {
+                for (int i = 0; i < n; i++) {
+                    list.add(randomBelow(list.size() + 1) + 1, i, i);
+                }
+                return n;
+            },
+            n -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++) {
+                    sum += list.get(randomBelow(list.size()) + 1).getEnd();
+                }
+                sink += sum;
+                return n;
+            },
+            n -> {
+                for (int i = 0; i < n; i++) {
+                    list.remove(randomBelow(list.size()) + 1);
+                }
+                return n;
+            }
+        };
+    }
+
+    // ****************************************************
+    // Traces
+    // ****************************************************
+
+    /**
+     * Makes a random trace for a pool of 'pages' one byte pages: 40%
+     * initiate, 30% terminate, 15% grow and 15% shrink, over pages / 16
+     * program ids, which keeps the pool nearly full.
+     *
+     * @param pages Integer
+     * @return CommandArray
+     */
+    private static CommandArray randomTrace(int pages) {
+        CommandArray commands = new CommandArray();
+        MemParam params = new MemParam();
+        params.numPages = pages;
+        params.numPrograms = Math.max(1, pages / 16);
+        params.maxSize = 64;
+        params.pageSize = 1;
+        commands.setParams(params);
+
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            int id = randomBelow(params.numPrograms);
+            int pick = randomBelow(100);
+            if (pick < 40) {
+                commands.add('i', id, randomBelow(32) + 1);
+            } else if (pick < 70) {
+                commands.add('t', id, 0);
+            } else if (pick < 85) {
+                commands.add('g', id, randomBelow(8) + 1);
+            } else {
+                commands.add('s', id, randomBelow(8) + 1);
+            }
+        }
+        return commands;
+    }
+
+    // ****************************************************
+    // Helpers
+    // ****************************************************
+
+    /**
+     * Sets the pool, and the policy when given as "pool/policy", and the
+     * storage of the extents.
+     *
+     * @param params MemParam
+     * @param pool   String
+     */
+    private static void usePool(MemParam params, String pool) {
+        params.storage = storage;
+        int slash = pool.indexOf('/');
+        if (slash < 0) {
+            params.pool = pool;
+        } else {
+            params.pool = pool.substring(0, slash);
+            params.policy = pool.substring(slash + 1);
+        }
+    }
+
+    private static int[] intList(String text) {
+        String[] parts = text.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    // xorshift, cheaper than java.util.Random and the same on every run
+    private static int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int randomBelow(int bound) {
+        return (int) (((nextRandom() & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+}
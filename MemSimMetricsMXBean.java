@@ -0,0 +1,53 @@
+import java.util.Map;
+
+/**
+ * What SimMetrics shows over JMX, under the name MemSim:type=Metrics,id=<n>.
+ * The gauges are those of the last sample; the maps are keyed by opcode and
+ * cover every command since the simulator started.
+ */
+public interface MemSimMetricsMXBean {
+
+    long getCommands();
+
+    int getFreePages();
+
+    int getFreeExtents();
+
+    int getLargestFreeExtent();
+
+    /**
+     * Gets the share of free pages that are not in the largest free extent.
+     *
+     * @return Double, from 0 to 1
+     */
+    double getExternalFragmentation();
+
+    /**
+     * Gets the bytes of occupied pages that no program uses, lost to
+     * rounding sizes up to whole pages.
+     *
+     * @return Long
+     */
+    long getInternalFragmentationBytes();
+
+    /**
+     * Gets the share of the bytes of occupied pages that no program uses.
+     *
+     * @return Double, from 0 to 1
+     */
+    double getInternalFragmentation();
+
+    int getRunningPrograms();
+
+    long getBytesInUse();
+
+    Map<String, Long> getCommandCounts();
+
+    Map<String, Long> getMeanNanos();
+
+    Map<String, Long> getP50Nanos();
+
+    Map<String, Long> getP99Nanos();
+
+    Map<String, Long> getMaxNanos();
+}
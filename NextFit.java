@@ -0,0 +1,26 @@
+/**
+ * Next-fit: like first-fit, but the search starts where the previous
+ * allocation stopped (the roving pointer) and wraps around to page 0.
+ */
+public class NextFit implements AllocPolicy {
+
+    // First page after the most recent allocation
+    private int rover = 0;
+
+    public int choose(FreePageIndex freePages, int numPages) {
+        int node = freePages.floor(rover);
+
+        // The rover may point into the middle of a free extent
+        if (node == FreePageIndex.NULL || freePages.getEnd(node) < rover) {
+            node = freePages.ceiling(rover);
+        }
+        if (node == FreePageIndex.NULL) {
+            node = freePages.first();
+        }
+        return node;
+    }
+
+    public void allocated(int start, int numPages) {
+        rover = start + numPages;
+    }
+}
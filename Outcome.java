@@ -0,0 +1,74 @@
+/**
+ * Everything a command can result in, with the opcode it belongs to and the
+ * printf-style text the simulator prints for it. Only %d (with an optional
+ * width), %n and %% are used, filled in from up to three int arguments.
+ */
+public enum Outcome {
+
+    INITIATED('i', "initiated", "%nProgram %d initiated, size = %d%n"),
+    INITIATE_EXISTS('i', "already exists", "ERROR on initiate: Program %d already exists.%n"),
+    INITIATE_NO_SPACE('i', "insufficient space", "insufficient space for Program %d%n"),
+    INITIATE_BAD_ID('i', "invalid program id", "ERROR on initiate: Program %d is not a valid program id%n"),
+    INITIATE_TOO_MANY('i', "too many programs", "ERROR on initiate: too many programs to add Program %d%n"),
+
+    TERMINATED('t', "terminated", "%nProgram %d terminated, %d pages freed"),
+    TERMINATE_MISSING('t', "does not exist", "ERROR on terminate command: Program %d does not exist"),
+
+    FREE_LIST('p', "free page list", "%nContents of free page list%nStart page  End page%n"),
+    PROGRAM_USAGE('p', "program page usage", "Page usage for program %d --- size = %d%nStart page  End page%n"),
+    PRINT_MISSING('p', "does not exist", "%nERROR on print command: Program %d does not exist"),
+
+    GREW('g', "increased", "%nProgram %d increased by %d bytes, new size = %d%n"),
+    GROW_MISSING('g', "does not exist", "%nERROR on grow command: Program %d does not exist%n"),
+    GROW_MAX_SIZE('g', "MAX SIZE exceeded", "%nERROR on grow command: MAX SIZE exceeded for Program %d%n"),
+    GROW_NO_SPACE('g', "insufficient space", "%nERROR on grow command: insufficient space for program %d%n"),
+
+    SHRANK('s', "decreased", "%nProgram %d decreased by %d, new size = %d%n"),
+    SHRINK_MISSING('s', "does not exist", "%nERROR on shrink command: Program %d does not exist%n"),
+    SHRINK_TOO_MUCH('s', "insufficient allocation", "%nERROR on shrink command: insufficient allocation for Program %d%n"),
+
+    CHECKPOINTED('c', "saved", "%nSnapshot %d saved, %d programs%n"),
+    CHECKPOINT_FAILED('c', "could not be saved", "%nERROR on checkpoint: Snapshot %d could not be saved%n"),
+
+    RESTORED('r', "restored", "%nSnapshot %d restored, %d programs%n"),
+    RESTORE_FAILED('r', "could not be restored", "%nERROR on restore: Snapshot %d could not be restored%n"),
+
+    ACCESS_HIT('a', "hit", "%nProgram %d address %d: hit in frame %d%n"),
+    ACCESS_FAULT('a', "page fault", "%nProgram %d address %d: page fault, loaded into frame %d%n"),
+    ACCESS_TRANSLATED('a', "translated", "%nProgram %d address %d: physical page %d%n"),
+    ACCESS_MISSING('a', "does not exist", "%nERROR on access: Program %d does not exist%n"),
+    ACCESS_OUT_OF_RANGE('a', "address out of range", "%nERROR on access: address %d is outside Program %d%n"),
+    ACCESS_NO_FRAMES('a', "no frames or TLB", "%nERROR on access: there are no frames or TLB, see -frames and -tlb%n"),
+
+    COMPACTED('d', "compacted", "%nCompaction moved %d pages, %d free extents left%n"),
+
+    EXIT('x', "exit", "%nSIMULATOR EXIT: %d programs exist, occupying %d pages%n"),
+    TLB_STATS('x', "TLB statistics", "TLB: %d hits, %d misses, reach %d pages%n"),
+    PAGING_STATS('x', "paging statistics", "Paging: %d accesses, %d page faults, %d faults per 1000 accesses%n"),
+
+    UNKNOWN('?', "selection not found", "%%nSelection not found%%n%n"),
+
+    // One start/end line of a page list printed by 'p'; not a command outcome
+    PAGE_ROW(' ', "page list row", "%5d%11d%n"),
+    HUGE_PAGE_ROW(' ', "huge page row", "%5d%11d  huge%n");
+
+    public final char opcode;
+    public final String label;
+    public final String format;
+
+    Outcome(char opcode, String label, String format) {
+        this.opcode = opcode;
+        this.label = label;
+        this.format = format;
+    }
+
+    /**
+     * Checks whether this outcome ends a command, as opposed to being part
+     * of the output of one.
+     *
+     * @return boolean
+     */
+    public boolean isCommand() {
+        return this != PAGE_ROW && this != HUGE_PAGE_ROW;
+    }
+}
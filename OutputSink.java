@@ -0,0 +1,46 @@
+/**
+ * Where the simulator reports what its commands did. The handlers only hand
+ * over an Outcome and its numbers; the sink decides what becomes of them.
+ *
+ * -output text     prints the usual text, formatted into a large buffer (default)
+ * -output quiet    prints nothing, only counts the outcomes
+ * -output summary  counts the outcomes and prints statistics at 'x'
+ */
+public interface OutputSink {
+
+    /**
+     * Reports one outcome. Arguments the outcome does not use are ignored.
+     *
+     * @param outcome Outcome
+     * @param a       Integer, first %d
+     * @param b       Integer, second %d
+     * @param c       Integer, third %d
+     */
+    void emit(Outcome outcome, int a, int b, int c);
+
+    /**
+     * Makes sure everything reported so far has been written out.
+     */
+    void flush();
+
+    /**
+     * Creates the sink for an -output mode.
+     *
+     * @param mode String, text, quiet or summary
+     * @param sim  MemSim, the simulator the sink reports for
+     * @return OutputSink
+     * @throws IllegalArgumentException when the mode is unknown
+     */
+    static OutputSink forMode(String mode, MemSim sim) {
+        switch (mode) {
+            case "text":
+                return new TextOutput(System.out);
+            case "quiet":
+                return new QuietOutput();
+            case "summary":
+                return new SummaryOutput(sim, System.out);
+            default:
+                throw new IllegalArgumentException("Unknown output mode: " + mode);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * Maps page keys, ((long) program id << 32) | virtual page, to ints, for the
+ * ghost lists of the page replacement policies. Open addressing with linear
+ * probing and deletion by shifting entries back, like ProgTable, over plain
+ * long and int arrays.
+ */
+public class PageKeyTable {
+
+    public static final int NULL = -1;
+
+    private final long keys[];   // NULL when the entry is empty
+    private final int vals[];
+    private final int mask;
+    private final int shift;
+
+    /**
+     * Creates a table for up to 'capacity' keys at the same time.
+     *
+     * @param capacity Integer
+     */
+    public PageKeyTable(int capacity) {
+        int entries = Integer.highestOneBit(Math.max(2, capacity) - 1) << 2;
+        keys = new long[entries];
+        vals = new int[entries];
+        mask = entries - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(entries);
+        Arrays.fill(keys, NULL);
+    }
+
+    /**
+     * Makes the key of virtual page 'page' of program 'id'.
+     *
+     * @param id   Integer, not negative
+     * @param page Integer, not negative
+     * @return Long
+     */
+    public static long key(int id, int page) {
+        return ((long) id << 32) | page;
+    }
+
+    /**
+     * Gets the value of 'key'.
+     *
+     * @param key Long
+     * @return Integer, NULL when the key is not in the table
+     */
+    public int get(long key) {
+        for (int e = home(key); keys[e] != NULL; e = (e + 1) & mask) {
+            if (keys[e] == key) {
+                return vals[e];
+            }
+        }
+        return NULL;
+    }
+
+    /**
+     * Sets the value of 'key', which must not be in the table.
+     *
+     * @param key   Long
+     * @param value Integer
+     */
+    public void put(long key, int value) {
+        int e = home(key);
+        while (keys[e] != NULL) {
+            e = (e + 1) & mask;
+        }
+        keys[e] = key;
+        vals[e] = value;
+    }
+
+    /**
+     * Takes 'key' out of the table, if it is there.
+     *
+     * @param key Long
+     */
+    public void remove(long key) {
+        int e = home(key);
+        while (keys[e] != key) {
+            if (keys[e] == NULL) {
+                return;
+            }
+            e = (e + 1) & mask;
+        }
+
+        // Shifts back every later entry of the run that may move into the hole
+        int hole = e;
+        for (int f = (hole + 1) & mask; keys[f] != NULL; f = (f + 1) & mask) {
+            int h = home(keys[f]);
+            if (((f - h) & mask) >= ((f - hole) & mask)) {
+                keys[hole] = keys[f];
+                vals[hole] = vals[f];
+                hole = f;
+            }
+        }
+        keys[hole] = NULL;
+    }
+
+    private int home(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * The pool of pages that are not used by any program. MemSim only talks to the
+ * pool through this interface, so the way free pages are tracked can be
+ * switched per run (-pool extent|buddy|bitmap) without changing the handlers.
+ */
+public interface PagePool {
+
+    /**
+     * Gets the number of free pages in the pool.
+     *
+     * @return Integer
+     */
+    int getFreePages();
+
+    /**
+     * Gets the number of separate free extents (or blocks) in the pool.
+     *
+     * @return Integer
+     */
+    int getExtentCount();
+
+    /**
+     * Gets the number of pages in the largest free extent (or block), which
+     * bounds the largest request that can be met with one run of pages.
+     *
+     * @return Integer, 0 when no page is free
+     */
+    int getLargestExtent();
+
+    /**
+     * Moves at least 'numPages' pages from the pool to the page list 'dest', or
+     * as many as there are when the pool runs out. Each run of pages is added to
+     * 'dest' in ascending order. A pool may hand out more pages than asked for
+     * when it can only allocate in fixed block sizes.
+     *
+     * @param numPages Integer
+     * @param dest     List<PageUsage>
+     * @return Integer the number of pages moved
+     */
+    int allocate(int numPages, List<PageUsage> dest);
+
+    /**
+     * Tells whether allocate always moves exactly the pages asked for while
+     * the pool has enough, so the pages a program will hold are known before
+     * they are allocated (see MemSim.executeBatch).
+     *
+     * @return boolean
+     */
+    default boolean allocatesExactly() {
+        return true;
+    }
+
+    /**
+     * Moves one run of 'numPages' free pages that starts at a multiple of
+     * 'alignment' out of the pool, e.g. for a huge page. Pools that cannot
+     * find such runs never hand one out.
+     *
+     * @param numPages  Integer
+     * @param alignment Integer
+     * @return Integer the first page of the run, -1 when there is none
+     */
+    default int allocateAligned(int numPages, int alignment) {
+        return -1;
+    }
+
+    /**
+     * Returns the pages 'start' through 'end' to the pool.
+     *
+     * @param start Integer
+     * @param end   Integer
+     */
+    void free(int start, int end);
+
+    /**
+     * Takes every page out of the pool, so that no page is free. Pages can
+     * then be given to it again with free, e.g. to rebuild a saved free list.
+     */
+    void removeAll();
+
+    /**
+     * Adds every free extent of the pool to the end of 'dest', in ascending order.
+     *
+     * @param dest List<PageUsage>
+     */
+    void copyFreeExtents(List<PageUsage> dest);
+}
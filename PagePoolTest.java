@@ -0,0 +1,110 @@
+import java.util.Random;
+
+public class PagePoolTest {
+    // This class is meant to test the PagePool implementations. It runs the same
+// random mix of allocations and frees against every pool, keeps its own
+// record of which pages are in use, and prints whether the pool ever
+// handed out a page twice or lost track of its free pages.
+
+        public static void main(String args[]) {
+            testPool("extent/first", new ExtentPool(0, 4999, new FirstFit()), 5000);
+            testPool("extent/next", new ExtentPool(0, 4999, new NextFit()), 5000);
+            testPool("extent/best", new ExtentPool(0, 4999, new BestFit()), 5000);
+            testPool("extent/worst", new ExtentPool(0, 4999, new WorstFit()), 5000);
+            testPool("buddy", new BuddyPool(5000), 5000);
+            testPool("bitmap", new BitmapPool(5000), 5000);
+            testPool("bitmap, 300000 pages", new BitmapPool(300000), 300000);
+            testPool("sharded", new ShardedPagePool(5000, 4, "first"), 5000);
+            testPool("atomic bitmap", new AtomicBitmapPool(5000), 5000);
+        }
+
+        // Runs random allocations and frees against a pool
+        // @param name  The name to print for the pool
+        // @param pool  The pool to test, with every page free
+        // @param pages The number of pages in the pool
+        public static void testPool(String name, PagePool pool, int pages) {
+            Random random = new Random(2540);
+            boolean used[] = new boolean[pages];
+            java.util.List<List<PageUsage>> programs = new java.util.ArrayList<List<PageUsage>>();
+            String problem = null;
+            int maxRequest = Math.max(1, pages / 100);
+
+            for (int op = 0; op < 20000 && problem == null; op++) {
+                if (random.nextBoolean() && pool.getFreePages() > 0) {
+                    List<PageUsage> prog = new List<PageUsage>();
+                    int got = pool.allocate(1 + random.nextInt(maxRequest), prog);
+                    int counted = 0;
+                    for (int i = 1; i <= prog.size(); i++) {
+                        for (int p = prog.getStart(i); p <= prog.getEnd(i); p++) {
+                            if (used[p])
+                                problem = "page " + p + " handed out twice";
+                            used[p] = true;
+                            counted++;
+                        }
+                    }
+                    if (counted != got)
+                        problem = "allocate reported " + got + " pages for " + counted;
+                    programs.add(prog);
+                } else if (random.nextInt(8) == 0) {
+                    // An aligned run, as for a huge page
+                    int start = pool.allocateAligned(16, 16);
+                    if (start >= 0) {
+                        if (start % 16 != 0)
+                            problem = "aligned run at " + start;
+                        List<PageUsage> prog = new List<PageUsage>();
+                        prog.add(1, start, start + 15);
+                        for (int p = start; p <= start + 15; p++) {
+                            if (used[p])
+                                problem = "page " + p + " handed out twice";
+                            used[p] = true;
+                        }
+                        programs.add(prog);
+                    }
+                } else if (!programs.isEmpty()) {
+                    List<PageUsage> prog = programs.remove(random.nextInt(programs.size()));
+                    for (int i = 1; i <= prog.size(); i++) {
+                        for (int p = prog.getStart(i); p <= prog.getEnd(i); p++)
+                            used[p] = false;
+                        pool.free(prog.getStart(i), prog.getEnd(i));
+                    }
+                }
+
+                if (problem == null)
+                    problem = checkFree(pool, used);
+            }
+
+            System.out.printf("%-22s %s\n", name + ":", problem == null ? "OK" : problem);
+        }
+
+        // Compares the free extents of a pool with the pages known to be free
+        // @param pool The pool to check
+        // @param used Which pages are held by a program
+        // @return null when they agree, otherwise what is wrong
+        public static String checkFree(PagePool pool, boolean used[]) {
+            List<PageUsage> extents = new List<PageUsage>();
+            pool.copyFreeExtents(extents);
+            boolean free[] = new boolean[used.length];
+            int total = 0;
+            int largest = 0;
+            for (int i = 1; i <= extents.size(); i++) {
+                if (i > 1 && extents.getStart(i) <= extents.getEnd(i - 1))
+                    return "free extents out of order";
+                for (int p = extents.getStart(i); p <= extents.getEnd(i); p++)
+                    free[p] = true;
+                total += extents.getPages(i);
+                largest = Math.max(largest, extents.getPages(i));
+            }
+            for (int p = 0; p < used.length; p++) {
+                if (free[p] == used[p])
+                    return "page " + p + " is " + (used[p] ? "used and free" : "neither used nor free");
+            }
+            if (total != pool.getFreePages())
+                return "free page count " + pool.getFreePages() + ", expected " + total;
+            if (extents.size() != pool.getExtentCount())
+                return "extent count " + pool.getExtentCount() + ", expected " + extents.size();
+            if (largest != pool.getLargestExtent())
+                return "largest extent " + pool.getLargestExtent() + ", expected " + largest;
+            return null;
+        }
+
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * Demand paging on top of the physical page allocation. A fixed number of
+ * frames is taken from the free page pool when the simulator starts, and
+ * every program gets a page table (ProgInfo.pageTable) mapping each of its
+ * virtual pages to the frame it is resident in.
+ *
+ * An access to a page that is not resident is a page fault: the page gets a
+ * free frame, or the frame of a page the ReplacementPolicy evicts, whose
+ * page table entry is cleared. Pages of a program that ends or shrinks give
+ * their frames back. The page tables only grow as pages are accessed, so a
+ * program that is never accessed costs nothing.
+ */
+public class PagingUnit {
+
+    public static final int NOT_RESIDENT = -1;
+
+    // Physical pages the frames are held in
+    private final List<PageUsage> pages;
+
+    private final ReplacementPolicy policy;
+
+    // The program and virtual page in every frame, null when free
+    private final ProgInfo frameProg[];
+    private final int framePage[];
+
+    private long accesses;
+    private long faults;
+    private long evictions;
+
+    /**
+     * Creates a unit with the frames held in 'pages', all free.
+     *
+     * @param pages  List<PageUsage>, one frame per page
+     * @param policy String, name of the replacement policy
+     * @throws IllegalArgumentException when the policy is unknown
+     */
+    public PagingUnit(List<PageUsage> pages, String policy) {
+        int frames = 0;
+        for (int i = 1; i <= pages.size(); i++) {
+            frames += pages.getPages(i);
+        }
+        this.pages = pages;
+        this.policy = ReplacementPolicy.forName(policy, frames);
+        this.frameProg = new ProgInfo[frames];
+        this.framePage = new int[frames];
+    }
+
+    /**
+     * Gets the physical pages the frames are held in. Compaction may move
+     * them through this list.
+     *
+     * @return List<PageUsage>
+     */
+    public List<PageUsage> getPages() {
+        return pages;
+    }
+
+    public int getFrameCount() {
+        return frameProg.length;
+    }
+
+    public long getAccesses() {
+        return accesses;
+    }
+
+    public long getFaults() {
+        return faults;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Accesses virtual page 'page' of 'prog', loading it when it is not
+     * resident.
+     *
+     * @param prog ProgInfo
+     * @param page Integer, not negative
+     * @return Integer the frame of the page when it was resident (a hit),
+     * else -1 - the frame it was loaded into (a fault)
+     */
+    public int access(ProgInfo prog, int page) {
+        accesses++;
+        int table[] = prog.pageTable;
+        if (table == null || page >= table.length) {
+            int length = table == null ? 0 : table.length;
+            table = Arrays.copyOf(table == null ? new int[0] : table,
+                    Math.max(page + 1, Math.max(8, 2 * length)));
+            Arrays.fill(table, length, table.length, NOT_RESIDENT);
+            prog.pageTable = table;
+        }
+
+        int frame = table[page];
+        if (frame != NOT_RESIDENT) {
+            policy.hit(frame);
+            return frame;
+        }
+
+        faults++;
+        frame = policy.fault(PageKeyTable.key(prog.id, page));
+        if (frameProg[frame] != null) {
+            frameProg[frame].pageTable[framePage[frame]] = NOT_RESIDENT;
+            evictions++;
+        }
+        frameProg[frame] = prog;
+        framePage[frame] = page;
+        table[page] = frame;
+        return -1 - frame;
+    }
+
+    /**
+     * Gives back the frames of the pages of 'prog' from virtual page 'from'
+     * on, e.g. when it shrinks, or all of them (from 0) when it ends.
+     *
+     * @param prog ProgInfo
+     * @param from Integer
+     */
+    public void release(ProgInfo prog, int from) {
+        int table[] = prog.pageTable;
+        if (table == null) {
+            return;
+        }
+        for (int page = from; page < table.length; page++) {
+            int frame = table[page];
+            if (frame != NOT_RESIDENT) {
+                policy.release(frame);
+                frameProg[frame] = null;
+                table[page] = NOT_RESIDENT;
+            }
+        }
+    }
+
+    /**
+     * Gives back every frame, e.g. when the programs are replaced by a
+     * snapshot.
+     */
+    public void releaseAll() {
+        for (int frame = 0; frame < frameProg.length; frame++) {
+            if (frameProg[frame] != null) {
+                frameProg[frame].pageTable[framePage[frame]] = NOT_RESIDENT;
+                frameProg[frame] = null;
+                policy.release(frame);
+            }
+        }
+    }
+}
@@ -4,8 +4,25 @@
 //
 
 public class ProgInfo {
+    public int id;
     public int bytes;
-    public List<PageUsage> prog_usage;
+    public ExtentMap prog_usage;
+
+    // Pages it got in the batch being run that are not taken from the pool
+    // yet, see MemSim.executeBatch; 0 outside of a batch
+    public int pending;
+
+    // Huge pages, each an aligned run of MemSim.hugeFactor pages, which come
+    // before prog_usage in the program's address space; null until it has one
+    public List<PageUsage> huge;
+
+    // Frame of each virtual page, see PagingUnit; null until first accessed
+    public int pageTable[];
+
+    // Address space id of its TLB entries, 0 until it has one, see Tlb
+    public int asid;
+    public long tlbHits;
+    public long tlbMisses;
 
     public ProgInfo() {
     }
@@ -0,0 +1,197 @@
+import java.util.Arrays;
+
+/**
+ * The running programs, keyed by program id.
+ *
+ * Ids are looked up in an open-addressing hash table of plain ints (linear
+ * probing, deletion by shifting entries back instead of leaving tombstones),
+ * which maps each id to a slot. Slots hold the ProgInfo of a program and are
+ * reused once the program is terminated, together with its page list, so ids
+ * may be spread over the whole int range without a dense array per id.
+ */
+public class ProgTable {
+
+    public static final int NULL = -1;
+
+    private final int keys[];   // program id in each table entry, NULL when empty
+    private final int vals[];   // slot of the program in each table entry
+    private final int mask;     // table entries - 1
+
+    private final ProgInfo slots[];  // created when a slot is first used
+    private final boolean offHeap;   // whether page lists are kept off the heap
+    private final int freeSlots[];   // stack of slots not in use
+    private int numFree;
+
+    /**
+     * Creates a table for up to 'capacity' programs at the same time.
+     *
+     * @param capacity Integer
+     */
+    public ProgTable(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Creates a table for up to 'capacity' programs at the same time, whose
+     * page lists are kept outside the Java heap when 'offHeap' is set.
+     *
+     * @param capacity Integer
+     * @param offHeap  boolean
+     */
+    public ProgTable(int capacity, boolean offHeap) {
+        this.offHeap = offHeap;
+        int entries = Integer.highestOneBit(Math.max(2, capacity) - 1) << 2;
+        keys = new int[entries];
+        vals = new int[entries];
+        mask = entries - 1;
+        Arrays.fill(keys, NULL);
+
+        slots = new ProgInfo[capacity];
+        freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        numFree = capacity;
+    }
+
+    /**
+     * Gets the number of programs in the table.
+     *
+     * @return Integer
+     */
+    public int size() {
+        return slots.length - numFree;
+    }
+
+    /**
+     * Gets the number of slots, which is the most programs the table holds.
+     *
+     * @return Integer
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the program in 'slot', or null when the slot has never been used.
+     * A slot that is not in use holds a program with bytes == -1.
+     *
+     * @param slot Integer
+     * @return ProgInfo
+     */
+    public ProgInfo getSlot(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Checks whether 'slot' holds a running program.
+     *
+     * @param slot Integer
+     * @return boolean
+     */
+    public boolean inUse(int slot) {
+        return slots[slot] != null && find(slots[slot].id) == slot;
+    }
+
+    /**
+     * Finds the slot of program 'id'.
+     *
+     * @param id Integer
+     * @return Integer slot, NULL when the program is not in the table
+     */
+    public int find(int id) {
+        if (id < 0) {
+            return NULL;
+        }
+        for (int e = hash(id); keys[e] != NULL; e = (e + 1) & mask) {
+            if (keys[e] == id) {
+                return vals[e];
+            }
+        }
+        return NULL;
+    }
+
+    /**
+     * Gets program 'id'.
+     *
+     * @param id Integer
+     * @return ProgInfo, null when the program is not in the table
+     */
+    public ProgInfo get(int id) {
+        int slot = find(id);
+        return slot == NULL ? null : slots[slot];
+    }
+
+    /**
+     * Adds program 'id', which must not be in the table yet, with an empty
+     * page list and a size of 0 bytes.
+     *
+     * @param id Integer, not negative
+     * @return ProgInfo, null when the table is full
+     */
+    public ProgInfo add(int id) {
+        if (numFree == 0) {
+            return null;
+        }
+        int slot = freeSlots[--numFree];
+        if (slots[slot] == null) {
+            slots[slot] = new ProgInfo();
+            slots[slot].prog_usage = new ExtentMap(offHeap);
+        }
+        ProgInfo prog = slots[slot];
+        prog.id = id;
+        prog.bytes = 0;
+        prog.pending = 0;
+        prog.asid = 0;
+        prog.tlbHits = 0;
+        prog.tlbMisses = 0;
+
+        int e = hash(id);
+        while (keys[e] != NULL) {
+            e = (e + 1) & mask;
+        }
+        keys[e] = id;
+        vals[e] = slot;
+        return prog;
+    }
+
+    /**
+     * Removes program 'id' from the table. Its page list must already be
+     * empty, since the ProgInfo is kept for the next program in its slot.
+     *
+     * @param id Integer
+     */
+    public void remove(int id) {
+        int e = hash(id);
+        while (keys[e] != id) {
+            e = (e + 1) & mask;
+        }
+
+        int slot = vals[e];
+        slots[slot].bytes = -1;
+        freeSlots[numFree++] = slot;
+
+        // Shifts later entries of the probe chain back into the hole
+        int hole = e;
+        for (int next = (e + 1) & mask; keys[next] != NULL; next = (next + 1) & mask) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                vals[hole] = vals[next];
+                hole = next;
+            }
+        }
+        keys[hole] = NULL;
+    }
+
+    /**
+     * Spreads the bits of 'id' over the table.
+     *
+     * @param id Integer
+     * @return Integer table entry
+     */
+    private int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Prints nothing and only counts how often each outcome happened, which is
+ * all a long replay needs when the text itself is not looked at.
+ */
+public class QuietOutput implements OutputSink {
+
+    private final long counts[] = new long[Outcome.values().length];
+
+    public void emit(Outcome outcome, int a, int b, int c) {
+        counts[outcome.ordinal()]++;
+    }
+
+    public void flush() {
+    }
+
+    /**
+     * Gets how often 'outcome' has been reported.
+     *
+     * @param outcome Outcome
+     * @return Long
+     */
+    public long getCount(Outcome outcome) {
+        return counts[outcome.ordinal()];
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * A page replacement policy decides which resident page gives up its frame
+ * when a page fault finds every frame in use. PagingUnit tells it about
+ * every hit and fault and every page that goes away with its program, and
+ * asks it for the frame each faulting page is loaded into.
+ *
+ * The policy is chosen once per run with the -replacement option (lru,
+ * clock, 2q or arc). Every policy keeps its lists in int arrays indexed by
+ * frame, and does O(1) work per hit and per fault (CLOCK amortized).
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Told that the page in 'frame' was accessed.
+     *
+     * @param frame Integer
+     */
+    void hit(int frame);
+
+    /**
+     * Picks the frame for page 'key', which is not resident: a free frame
+     * when there is one, else the frame of the page to evict. The page is
+     * then resident in that frame.
+     *
+     * @param key Long, see PageKeyTable.key
+     * @return Integer frame
+     */
+    int fault(long key);
+
+    /**
+     * Told that the page in 'frame' went away with its program, so that the
+     * frame is free again.
+     *
+     * @param frame Integer
+     */
+    void release(int frame);
+
+    /**
+     * Gets the policy called 'name' for 'frames' frames, all free.
+     *
+     * @param name   String, one of lru, clock, 2q or arc
+     * @param frames Integer
+     * @return ReplacementPolicy
+     */
+    static ReplacementPolicy forName(String name, int frames) {
+        switch (name) {
+            case "lru":
+                return new LruReplacement(frames);
+            case "clock":
+                return new ClockReplacement(frames);
+            case "2q":
+                return new TwoQueueReplacement(frames);
+            case "arc":
+                return new ArcReplacement(frames);
+            default:
+                throw new IllegalArgumentException("Unknown replacement policy: " + name);
+        }
+    }
+}
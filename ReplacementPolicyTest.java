@@ -0,0 +1,90 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class ReplacementPolicyTest {
+    // This class is meant to test the page replacement policies. It runs the
+// same random accesses, with programs shrinking and ending now and then,
+// through a PagingUnit with every policy, keeps its own record of which
+// page is in which frame, and prints whether a policy ever gave a frame to
+// two pages or reported a hit for a page that was not resident. LRU is also
+// checked against a LinkedHashMap in access order.
+
+        public static void main(String args[]) {
+            for (String policy : new String[] {"lru", "clock", "2q", "arc"}) {
+                for (int frames : new int[] {1, 7, 64}) {
+                    testPolicy(policy, frames);
+                }
+            }
+        }
+
+        // Runs random accesses through a PagingUnit
+        // @param policy The name of the replacement policy
+        // @param frames The number of frames
+        public static void testPolicy(String policy, int frames) {
+            Random random = new Random(2540);
+            List<PageUsage> pages = new List<PageUsage>();
+            pages.add(1, 100, 100 + frames - 1);
+            PagingUnit paging = new PagingUnit(pages, policy);
+
+            ProgInfo progs[] = new ProgInfo[8];
+            for (int id = 0; id < progs.length; id++) {
+                progs[id] = new ProgInfo();
+                progs[id].id = id;
+            }
+            // Key of the page in every frame, -1 when free
+            long inFrame[] = new long[frames];
+            java.util.Arrays.fill(inFrame, -1);
+            LinkedHashMap<Long, Boolean> lru = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+            long lruFaults = 0;
+            String problem = null;
+
+            for (int op = 0; op < 50000 && problem == null; op++) {
+                ProgInfo prog = progs[random.nextInt(progs.length)];
+                if (random.nextInt(100) == 0) {
+                    // Shrinks or ends the program
+                    int from = random.nextInt(4) * 8;
+                    paging.release(prog, from);
+                    for (int f = 0; f < frames; f++) {
+                        if (inFrame[f] >= 0 && (int) (inFrame[f] >>> 32) == prog.id
+                                && (int) inFrame[f] >= from) {
+                            lru.remove(inFrame[f]);
+                            inFrame[f] = -1;
+                        }
+                    }
+                    continue;
+                }
+
+                // Low pages are accessed most
+                int page = (int) (32 * Math.pow(random.nextDouble(), 3));
+                long key = PageKeyTable.key(prog.id, page);
+                int got = paging.access(prog, page);
+                int frame = got >= 0 ? got : -1 - got;
+                if (frame >= frames) {
+                    problem = "frame " + frame + " out of range";
+                } else if (got >= 0 && inFrame[frame] != key) {
+                    problem = "hit for page " + page + " of " + prog.id + " in the wrong frame";
+                } else if (got < 0) {
+                    for (int f = 0; f < frames; f++) {
+                        if (inFrame[f] == key)
+                            problem = "fault for page " + page + " of " + prog.id + " which is in frame " + f;
+                    }
+                    inFrame[frame] = key;
+                }
+
+                if (lru.get(key) == null) {
+                    lruFaults++;
+                    if (lru.size() == frames) {
+                        Map.Entry<Long, Boolean> eldest = lru.entrySet().iterator().next();
+                        lru.remove(eldest.getKey());
+                    }
+                    lru.put(key, Boolean.TRUE);
+                }
+            }
+            if (problem == null && policy.equals("lru") && lruFaults != paging.getFaults())
+                problem = paging.getFaults() + " faults, LinkedHashMap had " + lruFaults;
+
+            System.out.printf("%-6s %3d frames: %s, %d of %d accesses faulted%n", policy, frames,
+                    problem == null ? "ok" : "FAILED: " + problem, paging.getFaults(), paging.getAccesses());
+        }
+}
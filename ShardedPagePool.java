@@ -0,0 +1,388 @@
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe page pool in the style of tcmalloc.
+ *
+ * The pages are split into shards, each an ExtentPool over its own range of
+ * pages with its own lock. Every thread has a cache of a few free page runs
+ * taken from its home shard. Small requests are served from the cache, which
+ * is refilled BATCH pages at a time, and small frees go back to the cache,
+ * which drains BATCH pages to the shards once it holds more than 2 * BATCH.
+ * So most allocations and frees take no shared lock at all.
+ *
+ * A single atomic counter of free pages (in the shards and in all caches)
+ * decides whether a request can be met. The counter is lowered before pages
+ * are taken and raised after they are given back, so it never counts more
+ * pages than the shards and caches really hold, and a request that got its
+ * pages reserved always finds them: in its own cache, in a shard, or by
+ * taking them from another thread's cache.
+ *
+ * A thread gives its cache back to the shards with releaseThread. The
+ * cache of a thread that ends without doing so is given back when the next
+ * thread starts using the pool, so with threads that come and go the caches
+ * stay as many as the threads that are alive.
+ *
+ * Locks are taken in the order cache, then shard, and never two caches or
+ * two shards at the same time.
+ */
+public class ShardedPagePool implements ConcurrentPagePool {
+
+    // Pages moved between a shard and a thread cache at a time
+    public static final int BATCH = 32;
+
+    private final ExtentPool shards[];
+    private final int shardPages;   // pages in each shard, except maybe the last
+    private final AtomicInteger freePages;
+
+    // The cache of every thread that uses the pool
+    private final CopyOnWriteArrayList<PageCache> caches = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<PageCache> localCache = new ThreadLocal<>();
+    private final AtomicInteger nextHome = new AtomicInteger();
+
+    /**
+     * Free page runs held by one thread, in no particular order.
+     * Guarded by its own lock, which only other threads taking pages from
+     * an idle cache compete for.
+     */
+    private static class PageCache {
+        final List<PageUsage> runs = new List<PageUsage>();
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        int pages;
+        int home;
+    }
+
+    /**
+     * Creates a pool where the pages 0 through numPages - 1 are free.
+     *
+     * @param numPages  Integer
+     * @param numShards Integer, at least 1
+     * @param policy    String, allocation policy of every shard
+     */
+    public ShardedPagePool(int numPages, int numShards, String policy) {
+        int count = Math.max(1, Math.min(numShards, numPages / BATCH));
+        shardPages = (int) (((long) numPages + count - 1) / count);
+        count = (int) (((long) numPages + shardPages - 1) / shardPages);
+
+        shards = new ExtentPool[count];
+        for (int i = 0; i < count; i++) {
+            int first = i * shardPages;
+            int last = (int) Math.min(numPages - 1L, (long) first + shardPages - 1);
+            shards[i] = new ExtentPool(first, last, AllocPolicy.forName(policy));
+        }
+        freePages = new AtomicInteger(numPages);
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return Integer
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int getFreePages() {
+        return freePages.get();
+    }
+
+    /**
+     * Gets the number of thread caches, one for every thread that uses the
+     * pool and has not released it.
+     *
+     * @return Integer
+     */
+    public int getCacheCount() {
+        return caches.size();
+    }
+
+    /**
+     * Gets the number of free extents, with runs from the shards and the
+     * caches merged. This has to collect every free run, so it takes
+     * O(n log n) time for n runs.
+     *
+     * @return Integer
+     */
+    public int getExtentCount() {
+        return merged().size();
+    }
+
+    /**
+     * Gets the largest free extent, with runs from the shards and the
+     * caches merged, in O(n log n) time like getExtentCount.
+     *
+     * @return Integer
+     */
+    public int getLargestExtent() {
+        FreePageIndex merged = merged();
+        int node = merged.largest();
+        return node == FreePageIndex.NULL ? 0 : merged.getPages(node);
+    }
+
+    public boolean tryAllocate(int numPages, List<PageUsage> dest) {
+        while (true) {
+            int free = freePages.get();
+            if (free < numPages) {
+                return false;
+            }
+            if (freePages.compareAndSet(free, free - numPages)) {
+                gather(numPages, dest);
+                return true;
+            }
+        }
+    }
+
+    public int allocate(int numPages, List<PageUsage> dest) {
+        while (true) {
+            int free = freePages.get();
+            int take = Math.min(free, numPages);
+            if (freePages.compareAndSet(free, free - take)) {
+                gather(take, dest);
+                return take;
+            }
+        }
+    }
+
+    public void free(int start, int end) {
+        int pages = end - start + 1;
+        if (pages <= BATCH) {
+            PageCache cache = cache();
+            synchronized (cache) {
+                cache.runs.add(cache.runs.size() + 1, start, end);
+                cache.pages += pages;
+                if (cache.pages > 2 * BATCH) {
+                    drain(cache, BATCH);
+                }
+            }
+        } else {
+            freeToShards(start, end);
+        }
+        freePages.addAndGet(pages);
+    }
+
+    /**
+     * Gives the pages cached for the calling thread back to the shards and
+     * drops its cache.
+     */
+    public void releaseThread() {
+        PageCache cache = localCache.get();
+        if (cache != null) {
+            localCache.remove();
+            retire(cache);
+        }
+    }
+
+    /**
+     * Takes every page out of the shards and the caches. Other threads must
+     * not use the pool meanwhile.
+     */
+    public void removeAll() {
+        for (ExtentPool shard : shards) {
+            synchronized (shard) {
+                shard.removeAll();
+            }
+        }
+        for (PageCache cache : caches) {
+            synchronized (cache) {
+                cache.runs.removeAll();
+                cache.pages = 0;
+            }
+        }
+        freePages.set(0);
+    }
+
+    /**
+     * Adds every free extent to the end of 'dest', in ascending order, with
+     * runs from the shards and the caches merged. Pages that move while the
+     * copy is made may be missed or seen twice.
+     *
+     * @param dest List<PageUsage>
+     */
+    public void copyFreeExtents(List<PageUsage> dest) {
+        FreePageIndex merged = merged();
+        for (int node = merged.first(); node != FreePageIndex.NULL; node = merged.next(node)) {
+            dest.add(dest.size() + 1, merged.getStart(node), merged.getEnd(node));
+        }
+    }
+
+    /**
+     * Collects the free runs of the shards and the caches into one index,
+     * which coalesces them. Pages that move while this runs may be missed
+     * or seen twice.
+     *
+     * @return FreePageIndex
+     */
+    private FreePageIndex merged() {
+        FreePageIndex merged = new FreePageIndex();
+        for (ExtentPool shard : shards) {
+            synchronized (shard) {
+                FreePageIndex index = shard.getIndex();
+                for (int node = index.first(); node != FreePageIndex.NULL; node = index.next(node)) {
+                    merged.free(index.getStart(node), index.getEnd(node));
+                }
+            }
+        }
+        for (PageCache cache : caches) {
+            synchronized (cache) {
+                for (int i = 1; i <= cache.runs.size(); i++) {
+                    merged.free(cache.runs.getStart(i), cache.runs.getEnd(i));
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Moves 'numPages' pages, which have already been reserved on the free
+     * counter, to 'dest'.
+     *
+     * @param numPages Integer
+     * @param dest     List<PageUsage>
+     */
+    private void gather(int numPages, List<PageUsage> dest) {
+        PageCache cache = cache();
+        int need = numPages;
+
+        if (need <= BATCH) {
+            synchronized (cache) {
+                if (cache.pages < need) {
+                    ExtentPool shard = shards[cache.home];
+                    synchronized (shard) {
+                        int want = Math.min(BATCH + need - cache.pages, shard.getFreePages());
+                        if (want > 0) {
+                            cache.pages += shard.allocate(want, cache.runs);
+                        }
+                    }
+                }
+                need -= take(cache, need, dest);
+            }
+        }
+
+        while (need > 0) {
+            for (int i = 0; i < shards.length && need > 0; i++) {
+                ExtentPool shard = shards[(cache.home + i) % shards.length];
+                synchronized (shard) {
+                    int got = Math.min(need, shard.getFreePages());
+                    if (got > 0) {
+                        need -= shard.allocate(got, dest);
+                    }
+                }
+            }
+            for (PageCache other : caches) {
+                if (need == 0) {
+                    break;
+                }
+                synchronized (other) {
+                    need -= take(other, need, dest);
+                }
+            }
+            if (need > 0) {
+                // The reserved pages are on their way back from another thread
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Gets the cache of the calling thread, made on its first use of the
+     * pool. Making one first retires the caches of threads that have ended.
+     *
+     * @return PageCache
+     */
+    private PageCache cache() {
+        PageCache cache = localCache.get();
+        if (cache == null) {
+            for (PageCache other : caches) {
+                Thread owner = other.owner.get();
+                if (owner == null || !owner.isAlive()) {
+                    retire(other);
+                }
+            }
+            cache = new PageCache();
+            cache.home = Math.floorMod(nextHome.getAndIncrement(), shards.length);
+            caches.add(cache);
+            localCache.set(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Gives every page of 'cache' back to the shards and drops it. Its pages
+     * stay free, so the free counter does not change.
+     *
+     * @param cache PageCache
+     */
+    private void retire(PageCache cache) {
+        caches.remove(cache);
+        synchronized (cache) {
+            drain(cache, 0);
+        }
+    }
+
+    /**
+     * Moves up to 'need' pages from 'cache' to 'dest'. The caller holds the
+     * lock of the cache.
+     *
+     * @param cache PageCache
+     * @param need  Integer
+     * @param dest  List<PageUsage>
+     * @return Integer the number of pages moved
+     */
+    private static int take(PageCache cache, int need, List<PageUsage> dest) {
+        int taken = 0;
+        List<PageUsage> runs = cache.runs;
+        while (taken < need && !runs.isEmpty()) {
+            int last = runs.size();
+            int start = runs.getStart(last);
+            int pages = runs.getPages(last);
+            int ans = Math.min(pages, need - taken);
+
+            MemSim.putInOrder(start, start + ans - 1, dest);
+            if (ans == pages) {
+                runs.remove(last);
+            } else {
+                runs.setStart(last, start + ans);
+            }
+            taken += ans;
+        }
+        cache.pages -= taken;
+        return taken;
+    }
+
+    /**
+     * Gives runs of 'cache' back to the shards until it holds at most 'keep'
+     * pages. The caller holds the lock of the cache.
+     *
+     * @param cache PageCache
+     * @param keep  Integer
+     */
+    private void drain(PageCache cache, int keep) {
+        List<PageUsage> runs = cache.runs;
+        while (cache.pages > keep) {
+            int start = runs.getStart(1);
+            int end = runs.getEnd(1);
+            runs.remove(1);
+            cache.pages -= end - start + 1;
+            freeToShards(start, end);
+        }
+    }
+
+    /**
+     * Returns the pages 'start' through 'end' to the shards they belong to.
+     *
+     * @param start Integer
+     * @param end   Integer
+     */
+    private void freeToShards(int start, int end) {
+        while (start <= end) {
+            int i = start / shardPages;
+            int last = (int) Math.min(end, (long) (i + 1) * shardPages - 1);
+            ExtentPool shard = shards[i];
+            synchronized (shard) {
+                shard.free(start, last);
+            }
+            start = last + 1;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of one MemSim: a count and a latency histogram per opcode, taken
+ * on every command, and gauges of the memory state, taken every
+ * -metricsInterval milliseconds.
+ *
+ * The gauges are free pages, free extents, the largest free extent,
+ * external fragmentation (the share of free pages outside the largest
+ * extent) and internal fragmentation (bytes of occupied pages that no
+ * program uses because sizes are rounded up to PAGE_SIZE).
+ *
+ * Every sample can be added to a file, as a CSV row or a line of JSON, with
+ * the commands of the interval since the previous sample: their rate and
+ * the percentiles of their latencies. So a slowdown late in a trace shows
+ * up next to the fragmentation at that time. The metrics can also be shown
+ * over JMX (see MemSimMetricsMXBean).
+ *
+ * Everything is taken on the simulator's thread, so the pool is only read
+ * by the thread that changes it. JMX reads the last sample of the gauges,
+ * and reads the histograms without a lock, so it may see them part way
+ * through an update.
+ */
+public class SimMetrics implements MemSimMetricsMXBean {
+
+    // Opcodes with their own histogram; any other opcode counts as '?'
+    public static final String OPCODES = "itpgsadcrxb?";
+
+    // Commands between looks at the clock
+    private static final int CHECK_EVERY = 1024;
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final MemSim sim;
+    private final LatencyHistogram histograms[] = new LatencyHistogram[OPCODES.length()];
+    private final long intervalNanos;
+    private final long startNanos;
+    private long nextSample;
+    private long commands;
+
+    // File the samples are added to, null when there is none
+    private final PrintWriter dump;
+    private final boolean json;
+
+    // The histograms and commands as of the previous sample
+    private LatencyHistogram previous[];
+    private long previousCommands;
+    private long previousNanos;
+
+    // Name under JMX, null when not registered
+    private ObjectName name;
+
+    // Gauges of the last sample
+    private volatile Gauges gauges;
+
+    /**
+     * Values of the gauges at one moment.
+     */
+    private static class Gauges {
+        int freePages;
+        int freeExtents;
+        int largestFreeExtent;
+        double externalFragmentation;
+        long internalFragmentationBytes;
+        double internalFragmentation;
+        int running;
+        long bytesInUse;
+    }
+
+    /**
+     * Starts taking metrics of 'sim'.
+     *
+     * @param sim            MemSim
+     * @param file           Path, where samples are added, or null for none
+     * @param format         String, csv or json
+     * @param intervalMillis Long, time between samples
+     * @param jmx            boolean, whether to show the metrics over JMX
+     * @throws IOException when the file cannot be created
+     * @throws IllegalArgumentException when the format is unknown
+     */
+    public SimMetrics(MemSim sim, Path file, String format, long intervalMillis, boolean jmx) throws IOException {
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown metrics format: " + format);
+        }
+        this.sim = sim;
+        this.json = format.equals("json");
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        this.previous = copyHistograms();
+        this.intervalNanos = intervalMillis * 1000000;
+        this.startNanos = System.nanoTime();
+        this.previousNanos = startNanos;
+        this.nextSample = startNanos + intervalNanos;
+        this.gauges = measure();
+
+        if (file != null) {
+            dump = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(file)));
+            if (!json) {
+                printHeader();
+            }
+        } else {
+            dump = null;
+        }
+
+        if (jmx) {
+            try {
+                name = new ObjectName("MemSim:type=Metrics,id=" + nextId.getAndIncrement());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register metrics with JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Counts one command that took 'nanos' to run, and takes a sample when
+     * the interval is over.
+     *
+     * @param opcode Char
+     * @param nanos  Long
+     */
+    public void record(char opcode, long nanos) {
+        histograms[slot(opcode)].record(nanos);
+        if (++commands % CHECK_EVERY == 0 && System.nanoTime() >= nextSample) {
+            sample();
+        }
+    }
+
+    /**
+     * Takes the gauges, and adds a sample to the file when there is one.
+     */
+    public void sample() {
+        long now = System.nanoTime();
+        nextSample = now + intervalNanos;
+        gauges = measure();
+        if (dump != null) {
+            LatencyHistogram current[] = copyHistograms();
+            if (json) {
+                printJson(now, current);
+            } else {
+                printCsv(now, current);
+            }
+            dump.flush();
+            previous = current;
+        }
+        previousCommands = commands;
+        previousNanos = now;
+    }
+
+    /**
+     * Takes a last sample, closes the file and leaves JMX.
+     */
+    public void close() {
+        sample();
+        if (dump != null) {
+            dump.close();
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone
+            }
+            name = null;
+        }
+    }
+
+    public long getCommands() {
+        return commands;
+    }
+
+    public int getFreePages() {
+        return gauges.freePages;
+    }
+
+    public int getFreeExtents() {
+        return gauges.freeExtents;
+    }
+
+    public int getLargestFreeExtent() {
+        return gauges.largestFreeExtent;
+    }
+
+    public double getExternalFragmentation() {
+        return gauges.externalFragmentation;
+    }
+
+    public long getInternalFragmentationBytes() {
+        return gauges.internalFragmentationBytes;
+    }
+
+    public double getInternalFragmentation() {
+        return gauges.internalFragmentation;
+    }
+
+    public int getRunningPrograms() {
+        return gauges.running;
+    }
+
+    public long getBytesInUse() {
+        return gauges.bytesInUse;
+    }
+
+    public Map<String, Long> getCommandCounts() {
+        return byOpcode(LatencyHistogram::getCount);
+    }
+
+    public Map<String, Long> getMeanNanos() {
+        return byOpcode(LatencyHistogram::getMean);
+    }
+
+    public Map<String, Long> getP50Nanos() {
+        return byOpcode(h -> h.getPercentile(0.5));
+    }
+
+    public Map<String, Long> getP99Nanos() {
+        return byOpcode(h -> h.getPercentile(0.99));
+    }
+
+    public Map<String, Long> getMaxNanos() {
+        return byOpcode(LatencyHistogram::getMax);
+    }
+
+    /**
+     * Gets the histogram of every command with 'opcode' so far.
+     *
+     * @param opcode Char
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getHistogram(char opcode) {
+        return histograms[slot(opcode)];
+    }
+
+    /**
+     * Gets the index of the histogram of 'opcode'.
+     *
+     * @param opcode Char
+     * @return Integer
+     */
+    private static int slot(char opcode) {
+        int slot = OPCODES.indexOf(opcode);
+        return slot < 0 ? OPCODES.length() - 1 : slot;
+    }
+
+    /**
+     * Reads the gauges from the simulator.
+     *
+     * @return Gauges
+     */
+    private Gauges measure() {
+        Gauges g = new Gauges();
+        g.freePages = sim.getFreePageCount();
+        g.freeExtents = sim.getFreeExtentCount();
+        g.largestFreeExtent = sim.getLargestFreeExtent();
+        g.externalFragmentation = g.freePages == 0 ? 0
+                : 1 - (double) g.largestFreeExtent / g.freePages;
+        g.running = sim.getRunningCount();
+        g.bytesInUse = sim.getBytesInUse();
+        long occupiedBytes = (long) sim.getOccupiedPageCount() * sim.pageSize;
+        g.internalFragmentationBytes = occupiedBytes - g.bytesInUse;
+        g.internalFragmentation = occupiedBytes == 0 ? 0
+                : (double) g.internalFragmentationBytes / occupiedBytes;
+        return g;
+    }
+
+    private LatencyHistogram[] copyHistograms() {
+        LatencyHistogram copy[] = new LatencyHistogram[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            copy[i] = histograms[i].copy();
+        }
+        return copy;
+    }
+
+    private Map<String, Long> byOpcode(ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < histograms.length; i++) {
+            if (histograms[i].getCount() > 0) {
+                map.put(String.valueOf(OPCODES.charAt(i)), value.applyAsLong(histograms[i]));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the commands per second since the previous sample.
+     *
+     * @param now Long nanoseconds
+     * @return Double
+     */
+    private double rate(long now) {
+        long nanos = now - previousNanos;
+        return nanos == 0 ? 0 : (commands - previousCommands) * 1e9 / nanos;
+    }
+
+    private void printHeader() {
+        StringBuilder line = new StringBuilder("elapsed_ms,commands,commands_per_s,free_pages,"
+                + "free_extents,largest_free_extent,external_fragmentation,"
+                + "internal_fragmentation_bytes,internal_fragmentation,running,bytes_in_use");
+        for (int i = 0; i < OPCODES.length(); i++) {
+            String op = OPCODES.charAt(i) == '?' ? "other" : String.valueOf(OPCODES.charAt(i));
+            line.append(String.format(Locale.ROOT, ",%1$s_count,%1$s_mean_ns,%1$s_p50_ns,%1$s_p99_ns,%1$s_max_ns", op));
+        }
+        dump.println(line);
+    }
+
+    private void printCsv(long now, LatencyHistogram current[]) {
+        Gauges g = gauges;
+        StringBuilder line = new StringBuilder();
+        line.append(String.format(Locale.ROOT, "%d,%d,%.1f,%d,%d,%d,%.6f,%d,%.6f,%d,%d",
+                (now - startNanos) / 1000000, commands, rate(now), g.freePages, g.freeExtents,
+                g.largestFreeExtent, g.externalFragmentation, g.internalFragmentationBytes,
+                g.internalFragmentation, g.running, g.bytesInUse));
+        for (int i = 0; i < current.length; i++) {
+            LatencyHistogram h = current[i].since(previous[i]);
+            line.append(String.format(Locale.ROOT, ",%d,%d,%d,%d,%d", h.getCount(), h.getMean(),
+                    h.getPercentile(0.5), h.getPercentile(0.99), h.getMax()));
+        }
+        dump.println(line);
+    }
+
+    private void printJson(long now, LatencyHistogram current[]) {
+        Gauges g = gauges;
+        StringBuilder line = new StringBuilder();
+        line.append(String.format(Locale.ROOT, "{\"elapsedMs\":%d,\"commands\":%d,\"commandsPerSecond\":%.1f,"
+                        + "\"freePages\":%d,\"freeExtents\":%d,\"largestFreeExtent\":%d,"
+                        + "\"externalFragmentation\":%.6f,\"internalFragmentationBytes\":%d,"
+                        + "\"internalFragmentation\":%.6f,\"running\":%d,\"bytesInUse\":%d,\"opcodes\":{",
+                (now - startNanos) / 1000000, commands, rate(now), g.freePages, g.freeExtents,
+                g.largestFreeExtent, g.externalFragmentation, g.internalFragmentationBytes,
+                g.internalFragmentation, g.running, g.bytesInUse));
+        boolean first = true;
+        for (int i = 0; i < current.length; i++) {
+            LatencyHistogram h = current[i].since(previous[i]);
+            if (h.getCount() == 0) {
+                continue;
+            }
+            line.append(first ? "" : ",");
+            line.append(String.format(Locale.ROOT, "\"%c\":{\"count\":%d,\"meanNs\":%d,\"p50Ns\":%d,\"p99Ns\":%d,\"maxNs\":%d}",
+                    OPCODES.charAt(i), h.getCount(), h.getMean(), h.getPercentile(0.5),
+                    h.getPercentile(0.99), h.getMax()));
+            first = false;
+        }
+        dump.println(line.append("}}"));
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Int at a time access to a snapshot file through a memory-mapped
+ * FileChannel, a window at a time like ByteInput, so that a snapshot may be
+ * larger than one mapping. See MemSim.saveSnapshot for what is in it.
+ *
+ * All values are ints (a long is two), and windows are a multiple of four
+ * bytes, so no value is ever split between two windows.
+ */
+public class SnapshotFile implements Closeable {
+
+    public static final int MAGIC = 0x4D53534E;  // "MSSN"
+    public static final int VERSION = 3;
+
+    // Bytes mapped at a time
+    public static final int MAP_WINDOW = 64 << 20;
+
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final long size;
+
+    private MappedByteBuffer buf;
+    private long mapped;  // file offset of the current window
+
+    private SnapshotFile(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        this.channel = channel;
+        this.mode = mode;
+        this.size = size;
+        this.mapped = 0;
+        this.buf = channel.map(mode, 0, Math.min(MAP_WINDOW, size));
+    }
+
+    /**
+     * Creates (or replaces) the file 'path' with room for exactly 'ints' ints.
+     *
+     * @param path Path
+     * @param ints Long
+     * @return SnapshotFile
+     * @throws IOException when the file cannot be created or mapped
+     */
+    public static SnapshotFile create(Path path, long ints) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new SnapshotFile(channel, FileChannel.MapMode.READ_WRITE, ints * 4);
+    }
+
+    /**
+     * Opens the file 'path' for reading.
+     *
+     * @param path Path
+     * @return SnapshotFile
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new SnapshotFile(channel, FileChannel.MapMode.READ_ONLY, channel.size() & ~3L);
+    }
+
+    public void putInt(int value) throws IOException {
+        if (!buf.hasRemaining()) {
+            nextWindow();
+        }
+        buf.putInt(value);
+    }
+
+    public void putLong(long value) throws IOException {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * Reads the next int.
+     *
+     * @return Integer
+     * @throws EOFException when the file ends
+     */
+    public int getInt() throws IOException {
+        if (!buf.hasRemaining()) {
+            nextWindow();
+        }
+        return buf.getInt();
+    }
+
+    public long getLong() throws IOException {
+        long high = getInt();
+        return (high << 32) | (getInt() & 0xFFFFFFFFL);
+    }
+
+    public void close() throws IOException {
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            buf.force();
+        }
+        channel.close();
+    }
+
+    /**
+     * Maps the window after the current one.
+     *
+     * @throws EOFException when the file ends
+     */
+    private void nextWindow() throws IOException {
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            buf.force();
+        }
+        mapped += buf.capacity();
+        if (mapped >= size) {
+            throw new EOFException("snapshot ends early");
+        }
+        buf = channel.map(mode, mapped, Math.min(MAP_WINDOW, size - mapped));
+    }
+}
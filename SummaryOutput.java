@@ -0,0 +1,94 @@
+import java.io.PrintStream;
+
+/**
+ * Counts outcomes like QuietOutput, and at 'x' prints the exit line followed
+ * by a table of how often each outcome happened per opcode and the state of
+ * memory at that point.
+ */
+public class SummaryOutput extends QuietOutput {
+
+    private final MemSim sim;
+    private final PrintStream out;
+
+    /**
+     * Creates a sink that reports on 'sim' to 'out'.
+     *
+     * @param sim MemSim
+     * @param out PrintStream
+     */
+    public SummaryOutput(MemSim sim, PrintStream out) {
+        this.sim = sim;
+        this.out = out;
+    }
+
+    public void emit(Outcome outcome, int a, int b, int c) {
+        super.emit(outcome, a, b, c);
+        if (outcome == Outcome.EXIT) {
+            printSummary(a, b);
+        }
+    }
+
+    public void flush() {
+        out.flush();
+    }
+
+    /**
+     * Prints the exit line and the statistics.
+     *
+     * @param running  Integer, programs that exist
+     * @param occupied Integer, pages they occupy
+     */
+    private void printSummary(int running, int occupied) {
+        StringBuilder text = new StringBuilder();
+        String nl = System.lineSeparator();
+
+        text.append(nl).append("SIMULATOR EXIT: ").append(running).append(" programs exist, occupying ")
+                .append(occupied).append(" pages").append(nl);
+
+        text.append("Opcode  Outcome                   Count").append(nl);
+        for (Outcome outcome : Outcome.values()) {
+            long count = getCount(outcome);
+            if (count > 0 && outcome.isCommand()) {
+                text.append(String.format("%-7c %-24s %6d%n", outcome.opcode, outcome.label, count));
+            }
+        }
+
+        text.append("Free pages: ").append(sim.getFreePageCount())
+                .append(" in ").append(sim.getFreeExtentCount()).append(" extents").append(nl);
+        text.append("Bytes in use: ").append(sim.getBytesInUse()).append(nl);
+        if (sim.getPagesMoved() > 0) {
+            text.append("Pages moved by compaction: ").append(sim.getPagesMoved()).append(nl);
+        }
+        PagingUnit paging = sim.getPaging();
+        if (paging != null) {
+            text.append("Paging: ").append(paging.getAccesses()).append(" accesses, ")
+                    .append(paging.getFaults()).append(" faults, ")
+                    .append(paging.getEvictions()).append(" evictions in ")
+                    .append(paging.getFrameCount()).append(" frames").append(nl);
+        }
+        if (sim.getHugeFactor() > 0) {
+            text.append("Huge pages: ").append(sim.getHugePageCount()).append(" of ")
+                    .append(sim.getHugeFactor()).append(" pages, ").append(sim.getPromotions())
+                    .append(" promotions, ").append(sim.getDemotions()).append(" demotions, ")
+                    .append(sim.getSlackPages()).append(" pages held beyond program sizes").append(nl);
+        }
+        Tlb tlb = sim.getTlb();
+        if (tlb != null) {
+            long lookups = sim.getTlbHits() + sim.getTlbMisses();
+            text.append(String.format("TLB: %d lookups, %d misses (%.2f%%), %d flushes, %d entries %d-way,"
+                            + " reach %d pages (%d bytes)%n", lookups, sim.getTlbMisses(),
+                    lookups == 0 ? 0.0 : 100.0 * sim.getTlbMisses() / lookups, tlb.getFlushes(),
+                    tlb.getEntries(), tlb.getWays(), sim.getTlbReach(), sim.getTlbReach() * sim.pageSize));
+            Tlb huge = sim.getHugeTlb();
+            if (huge != null) {
+                text.append(String.format("Huge page TLB: %d hits, %d misses, %d entries %d-way%n",
+                        huge.getHits(), huge.getMisses(), huge.getEntries(), huge.getWays()));
+            }
+            for (ProgInfo prog : sim.mostTlbMisses(5)) {
+                text.append(String.format("  Program %d: %d hits, %d misses%n", prog.id, prog.tlbHits,
+                        prog.tlbMisses));
+            }
+        }
+        out.print(text);
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Replays one trace under many combinations of limits and page pools, in
+ * parallel, and prints one table with a row per combination.
+ *
+ * java SweepRunner -trace <file> [-pages <list>] [-programs <list>]
+ *                  [-maxSize <list>] [-pageSize <list>] [-pool <list>]
+ *                  [-policy <list>] [-frames <list>] [-replacement <list>]
+ *                  [-tlb <list>] [-tlbWays <list>] [-hugePages <list>]
+ *                  [-hugeFill <list>]
+ *                  [-threads <n>]
+ *
+ * Every flag takes a comma separated list of values, and every combination
+ * of them is run. Flags that are not given keep the limits of the trace (the
+ * header of a binary trace, or the MemParam defaults for a text one).
+ *
+ * The trace is parsed once into a CommandArray that all runs share. Each run
+ * is an independent MemSim with quiet output, and the runs are spread over
+ * a ForkJoinPool of -threads workers, one per processor by default.
+ */
+public class SweepRunner {
+
+    // The flags that may be swept, in the order they vary in the table
+    public static final String SWEPT[] = {"pages", "programs", "maxSize", "pageSize", "pool", "policy",
+            "frames", "replacement", "tlb", "tlbWays", "hugePages", "hugeFill"};
+
+    /**
+     * What one run ended with.
+     */
+    private static class Result {
+        MemParam params;
+        long millis;
+        String error;
+        long counts[] = new long[Outcome.values().length];
+        int freePages;
+        int freeExtents;
+        int running;
+        long bytesInUse;
+        long accesses;
+        long faults;
+        long tlbLookups;
+        long tlbMisses;
+        long slackPages;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties options = new Properties();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.setProperty(args[i].substring(1), args[i + 1]);
+        }
+        String trace = options.getProperty("trace");
+        if (trace == null) {
+            System.err.println("usage: java SweepRunner -trace <file> [-pages <list>] ... [-threads <n>]");
+            return;
+        }
+        int threads = Integer.parseInt(options.getProperty("threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+        // The limits of the trace, without the swept flags
+        CommandArray commands = CommandArray.read(Paths.get(trace), new String[0]);
+
+        java.util.List<MemParam> runs;
+        try {
+            runs = combinations(commands.getParams(), options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        java.util.List<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+        for (MemParam params : runs) {
+            tasks.add(() -> run(commands, params));
+        }
+        long start = System.nanoTime();
+        java.util.List<Future<Result>> results = workers.invokeAll(tasks);
+        long millis = (System.nanoTime() - start) / 1000000;
+        workers.shutdown();
+
+        System.out.printf("%10s %9s %8s %8s %-7s %-6s %8s %-5s %6s %4s %5s %4s %9s %9s %9s %9s %10s %8s %12s %10s"
+                        + " %10s %9s %9s %8s%n",
+                "Pages", "Programs", "MaxSize", "PageSize", "Pool", "Policy", "Frames", "Repl", "Tlb", "Ways",
+                "Huge", "Fill", "Initiated", "NoSpace", "GrowFail", "Running", "FreePages", "Extents",
+                "BytesInUse", "SlackPages", "Faults", "Faults/1k", "TlbMiss/1k", "ms");
+        for (Future<Result> future : results) {
+            Result r;
+            try {
+                r = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            MemParam p = r.params;
+            System.out.printf("%10d %9d %8d %8d %-7s %-6s %8d %-5s %6d %4d %5d %4d ", p.numPages, p.numPrograms,
+                    p.maxSize, p.pageSize, p.pool, p.policy, p.frames, p.replacement, p.tlb, p.tlbWays,
+                    p.hugePages, p.hugeFill);
+            if (r.error != null) {
+                System.out.printf("error: %s%n", r.error);
+                continue;
+            }
+            System.out.printf("%9d %9d %9d %9d %10d %8d %12d %10d %10d %9d %9d %8d%n",
+                    r.counts[Outcome.INITIATED.ordinal()],
+                    r.counts[Outcome.INITIATE_NO_SPACE.ordinal()],
+                    r.counts[Outcome.GROW_NO_SPACE.ordinal()],
+                    r.running, r.freePages, r.freeExtents, r.bytesInUse, r.slackPages, r.faults,
+                    r.accesses == 0 ? 0 : r.faults * 1000 / r.accesses,
+                    r.tlbLookups == 0 ? 0 : r.tlbMisses * 1000 / r.tlbLookups, r.millis);
+        }
+        System.out.printf("%d runs of %d commands on %d threads in %d ms%n",
+                runs.size(), commands.size(), threads, millis);
+    }
+
+    /**
+     * Makes the parameters of every run: each combination of the values
+     * given for the swept flags, on top of 'base'.
+     *
+     * @param base    MemParam
+     * @param options Properties
+     * @return the runs, the last flag in SWEPT varying fastest
+     * @throws IllegalArgumentException when a value is not valid
+     */
+    public static java.util.List<MemParam> combinations(MemParam base, Properties options) {
+        java.util.List<Properties> sets = new ArrayList<Properties>();
+        sets.add(new Properties());
+        for (String flag : SWEPT) {
+            String values = options.getProperty(flag);
+            if (values == null) {
+                continue;
+            }
+            java.util.List<Properties> longer = new ArrayList<Properties>();
+            for (Properties set : sets) {
+                for (String value : values.split(",")) {
+                    Properties next = new Properties();
+                    next.putAll(set);
+                    next.setProperty(flag, value.trim());
+                    longer.add(next);
+                }
+            }
+            sets = longer;
+        }
+
+        java.util.List<MemParam> runs = new ArrayList<MemParam>();
+        for (Properties set : sets) {
+            MemParam params = base.copy();
+            params.load(set);
+            params.output = "quiet";
+            runs.add(params);
+        }
+        return runs;
+    }
+
+    /**
+     * Replays 'commands' on a new simulator.
+     *
+     * @param commands CommandArray
+     * @param params   MemParam
+     * @return Result
+     */
+    private static Result run(CommandArray commands, MemParam params) {
+        Result result = new Result();
+        result.params = params;
+        long start = System.nanoTime();
+        try {
+            MemSim sim = new MemSim(params);
+            sim.run(commands.source());
+
+            QuietOutput out = (QuietOutput) sim.getOutput();
+            for (Outcome outcome : Outcome.values()) {
+                result.counts[outcome.ordinal()] = out.getCount(outcome);
+            }
+            result.freePages = sim.getFreePageCount();
+            result.freeExtents = sim.getFreeExtentCount();
+            result.running = sim.getRunningCount();
+            result.bytesInUse = sim.getBytesInUse();
+            result.slackPages = sim.getSlackPages();
+            if (sim.getPaging() != null) {
+                result.accesses = sim.getPaging().getAccesses();
+                result.faults = sim.getPaging().getFaults();
+            }
+            if (sim.getTlb() != null) {
+                result.tlbLookups = sim.getTlbHits() + sim.getTlbMisses();
+                result.tlbMisses = sim.getTlbMisses();
+            }
+        } catch (RuntimeException | IOException e) {
+            result.error = e.toString();
+        }
+        result.millis = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Prints outcomes exactly as System.out.printf would, but formats them
+ * straight into a large byte buffer instead of going through Formatter and
+ * a synchronized console write for every line.
+ */
+public class TextOutput implements OutputSink {
+
+    // Text is collected in a buffer of this size before writing
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte LINE_SEPARATOR[] = System.lineSeparator().getBytes();
+
+    private final OutputStream out;
+    private final byte buf[] = new byte[BUFFER_SIZE];
+    private int count;
+
+    /**
+     * Creates a sink that writes to 'out'.
+     *
+     * @param out OutputStream
+     */
+    public TextOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    public void emit(Outcome outcome, int a, int b, int c) {
+        String format = outcome.format;
+        int arg = 0;
+
+        for (int i = 0; i < format.length(); i++) {
+            char ch = format.charAt(i);
+            if (ch != '%') {
+                put((byte) ch);
+                continue;
+            }
+
+            int width = 0;
+            ch = format.charAt(++i);
+            while (ch >= '0' && ch <= '9') {
+                width = width * 10 + (ch - '0');
+                ch = format.charAt(++i);
+            }
+
+            if (ch == 'n') {
+                for (byte sep : LINE_SEPARATOR) {
+                    put(sep);
+                }
+            } else if (ch == '%') {
+                put((byte) '%');
+            } else {
+                putInt(arg == 0 ? a : arg == 1 ? b : c, width);
+                arg++;
+            }
+        }
+    }
+
+    public void flush() {
+        try {
+            out.write(buf, 0, count);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    /**
+     * Adds one byte to the buffer, writing the buffer out when full.
+     *
+     * @param value Byte
+     */
+    private void put(byte value) {
+        if (count == BUFFER_SIZE) {
+            flush();
+        }
+        buf[count++] = value;
+    }
+
+    /**
+     * Adds the decimal digits of 'value', right aligned in 'width' characters.
+     *
+     * @param value Integer
+     * @param width Integer
+     */
+    private void putInt(int value, int width) {
+        long v = value;
+        int digits = 1;
+        for (long rest = Math.abs(v); rest >= 10; rest /= 10) {
+            digits++;
+        }
+        int length = digits + (v < 0 ? 1 : 0);
+
+        for (int i = length; i < width; i++) {
+            put((byte) ' ');
+        }
+        if (v < 0) {
+            put((byte) '-');
+            v = -v;
+        }
+
+        long scale = 1;
+        for (int i = 1; i < digits; i++) {
+            scale *= 10;
+        }
+        for (; scale > 0; scale /= 10) {
+            put((byte) ('0' + v / scale % 10));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes commands as a text trace, one "<opcode> <prog_id> <size>" line per
+ * command, formatting the numbers straight into a byte buffer.
+ */
+public class TextTraceWriter implements CommandSink {
+
+    // Lines are collected in a buffer of this size before writing
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte buf[] = new byte[BUFFER_SIZE];
+    private int count;
+
+    /**
+     * Creates a writer for 'out', which is closed together with the writer.
+     *
+     * @param out OutputStream
+     */
+    public TextTraceWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void write(char opcode, int progID, int size) throws IOException {
+        // Longest line: opcode, two spaces, two 11 character ints and a newline
+        if (BUFFER_SIZE - count < 26) {
+            flush();
+        }
+        buf[count++] = (byte) opcode;
+        buf[count++] = ' ';
+        putInt(progID);
+        buf[count++] = ' ';
+        putInt(size);
+        buf[count++] = '\n';
+    }
+
+    /**
+     * Writes out the buffered lines.
+     *
+     * @throws IOException when writing fails
+     */
+    public void flush() throws IOException {
+        out.write(buf, 0, count);
+        count = 0;
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * Adds the decimal digits of 'value' to the buffer.
+     *
+     * @param value Integer
+     */
+    private void putInt(int value) {
+        long v = value;
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long rest = v; rest >= 10; rest /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        count = end;
+    }
+}
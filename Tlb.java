@@ -0,0 +1,180 @@
+/**
+ * A translation lookaside buffer: a cache of virtual to physical page
+ * translations, split into sets of 'ways' entries. A virtual page can only
+ * be held in set (page mod sets), so one way is direct-mapped and as many
+ * ways as entries is fully associative. When a set is full the entry to
+ * replace is picked by lru (least recently used), fifo (first loaded) or
+ * random.
+ *
+ * Entries are tagged with an address space id (ASID) as well as the page,
+ * so the translations of many programs can be held at once. Without ASIDs
+ * (as on hardware that has none) the TLB is flushed whenever a different
+ * program makes a lookup.
+ *
+ * Everything is kept in flat arrays: the tags and translations by entry, a
+ * PageKeyTable from tag to entry, so a lookup is O(1) whatever the ways, and
+ * the replacement order of every set as a FrameLists list.
+ */
+public class Tlb {
+
+    public static final int MISS = -1;
+
+    private static final long INVALID = -1;
+
+    private static final int LRU = 0;
+    private static final int FIFO = 1;
+    private static final int RANDOM = 2;
+
+    private final int entries;
+    private final int ways;
+    private final int sets;
+    private final int replacement;
+    private final boolean asids;
+
+    private final long tags[];   // PageKeyTable.key of each entry, INVALID when empty
+    private final int frames[];  // physical page of each entry
+    private final PageKeyTable index;
+
+    // Entries of each set, the next to replace last
+    private final FrameLists order;
+
+    // ASID of the last lookup, for flushing without ASIDs
+    private int current = -1;
+    private int seed = 0x2545F491;
+
+    private long hits;
+    private long misses;
+    private long flushes;
+
+    /**
+     * Creates an empty TLB.
+     *
+     * @param entries     Integer, at least 1
+     * @param ways        Integer, entries per set, 0 for fully associative
+     * @param replacement String, lru, fifo or random
+     * @param asids       boolean, whether entries are tagged with an ASID
+     * @throws IllegalArgumentException when the sizes or replacement are not valid
+     */
+    public Tlb(int entries, int ways, String replacement, boolean asids) {
+        if (ways == 0) {
+            ways = entries;
+        }
+        if (entries < 1 || ways < 1 || entries % ways != 0) {
+            throw new IllegalArgumentException("TLB entries must be a multiple of its ways: "
+                    + entries + " entries, " + ways + " ways");
+        }
+        switch (replacement) {
+            case "lru":
+                this.replacement = LRU;
+                break;
+            case "fifo":
+                this.replacement = FIFO;
+                break;
+            case "random":
+                this.replacement = RANDOM;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown TLB replacement: " + replacement);
+        }
+        this.entries = entries;
+        this.ways = ways;
+        this.sets = entries / ways;
+        this.asids = asids;
+
+        tags = new long[entries];
+        frames = new int[entries];
+        java.util.Arrays.fill(tags, INVALID);
+        index = new PageKeyTable(entries);
+        order = new FrameLists(entries, sets);
+        for (int e = 0; e < entries; e++) {
+            order.addFirst(e / ways, e);
+        }
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getWays() {
+        return ways;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Looks up the translation of virtual page 'page' of address space 'asid'.
+     *
+     * @param asid Integer, not negative
+     * @param page Integer, not negative
+     * @return Integer the physical page, or MISS
+     */
+    public int lookup(int asid, int page) {
+        if (!asids && asid != current && current != -1) {
+            flush();
+        }
+        current = asid;
+        int e = index.get(PageKeyTable.key(asid, page));
+        if (e == PageKeyTable.NULL) {
+            misses++;
+            return MISS;
+        }
+        hits++;
+        if (replacement == LRU) {
+            order.moveToFront(e / ways, e);
+        }
+        return frames[e];
+    }
+
+    /**
+     * Loads a translation after a miss, replacing an entry of its set.
+     *
+     * @param asid  Integer
+     * @param page  Integer
+     * @param frame Integer, the physical page
+     */
+    public void insert(int asid, int page, int frame) {
+        int set = page % sets;
+        int e;
+        if (replacement == RANDOM && tags[order.last(set)] != INVALID) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            e = set * ways + (seed & Integer.MAX_VALUE) % ways;
+        } else {
+            e = order.last(set);
+        }
+        if (tags[e] != INVALID) {
+            index.remove(tags[e]);
+        }
+        tags[e] = PageKeyTable.key(asid, page);
+        frames[e] = frame;
+        index.put(tags[e], e);
+        order.moveToFront(set, e);
+    }
+
+    /**
+     * Empties the TLB.
+     */
+    public void flush() {
+        for (int e = 0; e < entries; e++) {
+            if (tags[e] != INVALID) {
+                index.remove(tags[e]);
+                tags[e] = INVALID;
+                // Empty entries are replaced first
+                order.remove(e);
+                order.addLast(e / ways, e);
+            }
+        }
+        flushes++;
+    }
+}
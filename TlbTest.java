@@ -0,0 +1,55 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class TlbTest {
+    // This class is meant to test address translation through the TLB. A
+// program gets an access translated, then grows into pages that lie before
+// the ones it has, which moves its later virtual pages, and it prints
+// whether the next access still gets the page from before the grow. The
+// grow is run once on its own and once in a batch.
+
+        public static void main(String args[]) {
+            testGrow("grow", false);
+            testGrow("grow in a batch", true);
+        }
+
+        // Runs i 2 10, i 1 3, a 1 0, t 2, g 1 2, a 1 0 with one page per
+        // byte; after the grow program 1 has pages 0-1 and 10-12, so
+        // address 0 must be on page 0
+        // @param name    The name to print for the test
+        // @param batched Whether to run the commands with executeBatch
+        public static void testGrow(String name, boolean batched) {
+            MemParam params = new MemParam();
+            params.numPages = 30;
+            params.pageSize = 1;
+            params.tlb = 8;
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            PrintStream shown = System.out;
+            System.setOut(new PrintStream(text));
+            try {
+                MemSim sim = new MemSim(params);
+                CommandArray commands = new CommandArray();
+                commands.add('i', 2, 10);
+                commands.add('i', 1, 3);
+                commands.add('a', 1, 0);
+                commands.add('t', 2, 0);
+                commands.add('g', 1, 2);
+                commands.add('a', 1, 0);
+                if (batched) {
+                    sim.executeBatch(commands);
+                } else {
+                    for (int i = 0; i < commands.size(); i++)
+                        sim.execute(commands.getOpcode(i), commands.getProgID(i), commands.getSize(i));
+                }
+                sim.getOutput().flush();
+            } finally {
+                System.setOut(shown);
+            }
+
+            String lines[] = text.toString().split("address 0: physical page ");
+            String before = lines.length == 3 ? lines[1].trim().split("\\s+")[0] : "?";
+            String after = lines.length == 3 ? lines[2].trim().split("\\s+")[0] : "?";
+            System.out.printf("%-22s %s%n", name + ":", after.equals("0") ? "OK"
+                    : "FAILED: address 0 on page " + after + " after the grow, " + before + " before");
+        }
+}
@@ -0,0 +1,67 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Converts traces between the text format and the binary format.
+ *
+ * java TraceConverter <in> <out> [MemParam flags]
+ *
+ * A text <in> becomes a binary <out>, whose header records the limits given by
+ * the MemParam flags (-pages, -programs, -maxSize, -pageSize, -config). A binary
+ * <in> becomes a text <out>.
+ */
+public class TraceConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java TraceConverter <in> <out> [MemParam flags]");
+            return;
+        }
+        Path in = Paths.get(args[0]);
+        Path out = Paths.get(args[1]);
+        String flags[] = Arrays.copyOfRange(args, 2, args.length);
+
+        long count;
+        if (BinaryTraceReader.isBinaryTrace(in)) {
+            try (CommandSource source = new BinaryTraceReader(in);
+                 CommandSink sink = new TextTraceWriter(
+                         new BufferedOutputStream(new FileOutputStream(out.toFile())))) {
+                count = copy(source, sink);
+            }
+        } else {
+            MemParam params;
+            try {
+                params = MemParam.fromArgs(flags);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+            try (CommandSource source = new TraceReader(in);
+                 CommandSink sink = new BinaryTraceWriter(out, params)) {
+                count = copy(source, sink);
+            }
+        }
+        System.out.printf("%d commands converted%n", count);
+    }
+
+    /**
+     * Copies every command of 'source' to 'sink'.
+     *
+     * @param source CommandSource
+     * @param sink   CommandSink
+     * @return Long the number of commands copied
+     * @throws IOException when reading or writing fails
+     */
+    public static long copy(CommandSource source, CommandSink sink) throws IOException {
+        long count = 0;
+        while (source.next()) {
+            sink.write(source.getOpcode(), source.getProgID(), source.getSize());
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads simulator commands in the text format
+ *
+ * <opcode> <prog_id> <size>
+ *
+ * straight from bytes, without Scanner, regular expressions or a String per
+ * token. Like Scanner.next(), the opcode is the first character of a token
+ * and the rest of the token is ignored; tokens are separated by any white
+ * space.
+ *
+ * A trace file is memory-mapped a window at a time; standard input (or any
+ * other stream) is read through one large reusable buffer.
+ */
+public class TraceReader implements CommandSource {
+
+    private final ByteInput in;
+
+    private char opcode;
+    private int progID;
+    private int size;
+
+    /**
+     * Creates a reader for the trace file 'path'.
+     *
+     * @param path Path
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public TraceReader(Path path) throws IOException {
+        this.in = new ByteInput(path);
+    }
+
+    /**
+     * Creates a reader for the stream 'stream', e.g. System.in.
+     *
+     * @param stream InputStream
+     */
+    public TraceReader(InputStream stream) {
+        this.in = new ByteInput(stream);
+    }
+
+    /**
+     * Creates a reader for text that has already been opened.
+     *
+     * @param in ByteInput
+     */
+    public TraceReader(ByteInput in) {
+        this.in = in;
+    }
+
+    public char getOpcode() {
+        return opcode;
+    }
+
+    public int getProgID() {
+        return progID;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the next command, which is then available from getOpcode,
+     * getProgID and getSize.
+     *
+     * @return boolean, false at the end of the input
+     * @throws IOException when reading fails
+     * @throws InputMismatchException when prog_id or size is not an int
+     * @throws NoSuchElementException when the input ends inside a command
+     */
+    public boolean next() throws IOException {
+        int c = skipSpace();
+        if (c < 0) {
+            return false;
+        }
+        opcode = (char) c;
+
+        // Ignores the rest of the opcode token
+        do {
+            c = in.read();
+        } while (c > ' ');
+
+        progID = readInt();
+        size = readInt();
+        return true;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads one int token.
+     *
+     * @return Integer
+     * @throws IOException when reading fails
+     */
+    private int readInt() throws IOException {
+        int c = skipSpace();
+        if (c < 0) {
+            throw new NoSuchElementException();
+        }
+
+        boolean negative = c == '-';
+        if (c == '-' || c == '+') {
+            c = in.read();
+        }
+
+        long value = 0;
+        int digits = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw new InputMismatchException("Number out of range");
+            }
+            digits++;
+            c = in.read();
+        }
+        if (digits == 0 || c > ' ') {
+            throw new InputMismatchException("Expected a number");
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new InputMismatchException("Number out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Skips white space.
+     *
+     * @return Integer, the first byte after it, or -1 at the end of the input
+     * @throws IOException when reading fails
+     */
+    private int skipSpace() throws IOException {
+        int c = in.read();
+        while (c >= 0 && c <= ' ') {
+            c = in.read();
+        }
+        return c;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * 2Q (Johnson and Shasha, full version). A page seen for the first time
+ * goes into the FIFO queue A1in; when it is evicted from there its key is
+ * remembered in the ghost queue A1out. A page that faults again while it is
+ * in A1out has proven to be reused and goes into Am, which is kept in LRU
+ * order. Pages only seen once thereby never push reused pages out of Am.
+ *
+ * A1in is evicted from while it holds more than a quarter of the frames,
+ * and A1out remembers as many pages as half the frames.
+ */
+public class TwoQueueReplacement implements ReplacementPolicy {
+
+    // Lists of frames
+    private static final int FREE = 0;
+    private static final int A1IN = 1;
+    private static final int AM = 2;
+
+    // Lists of ghosts
+    private static final int GHOST_FREE = 0;
+    private static final int A1OUT = 1;
+
+    private final int kin;
+    private final FrameLists frames;
+    private final long frameKey[];
+
+    private final FrameLists ghosts;
+    private final long ghostKey[];
+    private final PageKeyTable ghostOf;
+
+    public TwoQueueReplacement(int numFrames) {
+        kin = Math.max(1, numFrames / 4);
+        int kout = Math.max(1, numFrames / 2);
+        frames = FrameLists.allIn(numFrames, 3, FREE);
+        frameKey = new long[numFrames];
+        ghosts = FrameLists.allIn(kout, 2, GHOST_FREE);
+        ghostKey = new long[kout];
+        ghostOf = new PageKeyTable(kout);
+    }
+
+    public void hit(int frame) {
+        if (frames.listOf(frame) == AM) {
+            frames.moveToFront(AM, frame);
+        }
+    }
+
+    public int fault(long key) {
+        int ghost = ghostOf.get(key);
+        if (ghost != PageKeyTable.NULL) {
+            ghostOf.remove(key);
+            ghosts.moveToFront(GHOST_FREE, ghost);
+        }
+
+        int frame;
+        if (!frames.isEmpty(FREE)) {
+            frame = frames.first(FREE);
+        } else if (frames.size(A1IN) > kin || frames.isEmpty(AM)) {
+            frame = frames.last(A1IN);
+            remember(frameKey[frame]);
+        } else {
+            frame = frames.last(AM);
+        }
+
+        frameKey[frame] = key;
+        frames.moveToFront(ghost != PageKeyTable.NULL ? AM : A1IN, frame);
+        return frame;
+    }
+
+    public void release(int frame) {
+        frames.moveToFront(FREE, frame);
+    }
+
+    /**
+     * Adds 'key' to the front of A1out, forgetting the oldest ghost when
+     * A1out is full.
+     *
+     * @param key Long
+     */
+    private void remember(long key) {
+        int ghost;
+        if (ghosts.isEmpty(GHOST_FREE)) {
+            ghost = ghosts.last(A1OUT);
+            ghostOf.remove(ghostKey[ghost]);
+        } else {
+            ghost = ghosts.first(GHOST_FREE);
+        }
+        ghostKey[ghost] = key;
+        ghostOf.put(key, ghost);
+        ghosts.moveToFront(A1OUT, ghost);
+    }
+}
@@ -0,0 +1,482 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * A synthetic stream of 'i', 'g', 's', 't' and 'a' commands, drawn from
+ * configurable distributions and ending with 'x'.
+ *
+ * Every program gets a size and a lifetime (counted in commands) when it is
+ * initiated, and is terminated when its lifetime is over. New programs are
+ * initiated while the pages of the running programs stay below the target
+ * occupancy; above it the program that would end next is terminated early.
+ * A 'resize' fraction of the commands grows or shrinks a running program,
+ * picked with a Zipf distribution over the running programs, so that a few
+ * programs get most of them. Programs grow while the occupancy is below the
+ * target and shrink above it. An 'access' fraction of the commands touches
+ * a byte of a running program for demand paging (-frames), the program and
+ * its page both picked with the Zipf distribution, so that every program
+ * has a few hot pages.
+ *
+ * The generator only follows its own commands, it does not see whether the
+ * simulator could carry them out, so on a full or fragmented pool some of
+ * them are refused like in any other trace.
+ *
+ * Settings, given as -name value like the MemParam flags:
+ *
+ *   -commands <n>     commands before the final 'x', 1000000
+ *   -seed <n>         random seed, 1
+ *   -zipf <s>         Zipf exponent of the program popularity, 1.0 (0 is uniform)
+ *   -lifetime <name>  exp (exponential) or pareto (heavy-tailed)
+ *   -meanLife <n>     mean lifetime in commands, 10 * NUM_PROGRAMS
+ *   -alpha <a>        shape of the pareto lifetimes, 1.5
+ *   -sizes <name>     uniform or pareto, sizes are 1 to MAX_SIZE bytes
+ *   -sizeAlpha <a>    shape of the pareto sizes, 1.2
+ *   -occupancy <f>    target fraction of NUM_PAGES in use, 0.8
+ *   -resize <f>       fraction of grow and shrink commands, 0.2
+ *   -access <f>       fraction of 'a' commands, 0
+ *
+ * java WorkloadGenerator [MemParam flags] [settings] runs the commands on a
+ * simulator in this process, without writing them as text.
+ * java WorkloadGenerator [MemParam flags] [settings] -out <file> [-format binary]
+ * writes them to a text (or binary) trace file instead.
+ */
+public class WorkloadGenerator implements CommandSource {
+
+    // The settings above, without the dash
+    public static final String SETTINGS[] = {"commands", "seed", "zipf", "lifetime", "meanLife",
+            "alpha", "sizes", "sizeAlpha", "occupancy", "resize", "access"};
+
+    public long commands = 1000000;
+    public long seed = 1;
+    public double zipf = 1.0;
+    public String lifetime = "exp";
+    public double meanLife;
+    public double alpha = 1.5;
+    public String sizes = "uniform";
+    public double sizeAlpha = 1.2;
+    public double occupancy = 0.8;
+    public double resize = 0.2;
+    public double access = 0;
+
+    private final int maxSize;
+    private final int pageSize;
+    private final long targetPages;
+    private final SplittableRandom random;
+
+    // Running programs, live[0 .. liveCount-1], and where each id is in live
+    private final int live[];
+    private final int liveIndex[];
+    private int liveCount;
+
+    // Size in bytes of every running program, by id
+    private final int bytes[];
+
+    // Ids that are not in use, as a stack
+    private final int freeIds[];
+    private int freeTop;
+
+    // Min-heap of the running programs by the command at which they end
+    private final long heapEnd[];
+    private final int heapId[];
+    private int heapSize;
+
+    // Pages held by the running programs
+    private long pagesInUse;
+
+    // Commands made so far, and whether the final 'x' was made
+    private long tick;
+    private boolean exited;
+
+    // Constants of the Zipf sampler, which only depend on the exponent
+    private double hIntegralX1;
+    private double zipfS;
+
+    private char opcode;
+    private int progID;
+    private int size;
+
+    /**
+     * Creates a generator for a simulator with the limits of 'params'.
+     *
+     * @param params  MemParam
+     * @param options Properties, the settings without the dash
+     * @throws IllegalArgumentException when a setting is not valid
+     */
+    public WorkloadGenerator(MemParam params, Properties options) {
+        meanLife = 10.0 * params.numPrograms;
+        load(options);
+
+        maxSize = params.maxSize;
+        pageSize = params.pageSize;
+        targetPages = (long) (occupancy * params.numPages);
+        random = new SplittableRandom(seed);
+
+        int n = params.numPrograms;
+        live = new int[n];
+        liveIndex = new int[n];
+        bytes = new int[n];
+        freeIds = new int[n];
+        heapEnd = new long[n];
+        heapId = new int[n];
+
+        // Lowest ids are handed out first
+        for (int i = 0; i < n; i++) {
+            freeIds[i] = n - 1 - i;
+        }
+        freeTop = n;
+
+        hIntegralX1 = hIntegral(1.5) - 1;
+        zipfS = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * Takes every setting that is present in 'props'; the others keep their value.
+     *
+     * @param props Properties
+     * @throws IllegalArgumentException when a value is not valid
+     */
+    private void load(Properties props) {
+        try {
+            commands = Long.parseLong(props.getProperty("commands", Long.toString(commands)));
+            seed = Long.parseLong(props.getProperty("seed", Long.toString(seed)));
+            zipf = Double.parseDouble(props.getProperty("zipf", Double.toString(zipf)));
+            meanLife = Double.parseDouble(props.getProperty("meanLife", Double.toString(meanLife)));
+            alpha = Double.parseDouble(props.getProperty("alpha", Double.toString(alpha)));
+            sizeAlpha = Double.parseDouble(props.getProperty("sizeAlpha", Double.toString(sizeAlpha)));
+            occupancy = Double.parseDouble(props.getProperty("occupancy", Double.toString(occupancy)));
+            resize = Double.parseDouble(props.getProperty("resize", Double.toString(resize)));
+            access = Double.parseDouble(props.getProperty("access", Double.toString(access)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Workload setting must be a number: " + e.getMessage());
+        }
+        lifetime = props.getProperty("lifetime", lifetime);
+        sizes = props.getProperty("sizes", sizes);
+
+        if (!lifetime.equals("exp") && !lifetime.equals("pareto")) {
+            throw new IllegalArgumentException("Unknown lifetime distribution: " + lifetime);
+        }
+        if (!sizes.equals("uniform") && !sizes.equals("pareto")) {
+            throw new IllegalArgumentException("Unknown size distribution: " + sizes);
+        }
+        if (commands < 0 || zipf < 0 || meanLife < 1 || alpha <= 0 || sizeAlpha <= 0
+                || occupancy < 0 || resize < 0 || resize > 1 || access < 0 || access > 1) {
+            throw new IllegalArgumentException("Workload setting out of range");
+        }
+    }
+
+    public char getOpcode() {
+        return opcode;
+    }
+
+    public int getProgID() {
+        return progID;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Makes the next command.
+     *
+     * @return boolean, false after the final 'x'
+     */
+    public boolean next() {
+        if (tick == commands) {
+            if (exited) {
+                return false;
+            }
+            exited = true;
+            opcode = 'x';
+            progID = 0;
+            size = 0;
+            return true;
+        }
+        tick++;
+
+        if (heapSize > 0 && heapEnd[0] <= tick) {
+            terminate();
+        } else if ((access == 0 || liveCount == 0 || random.nextDouble() >= access || !access())
+                && (liveCount == 0 || random.nextDouble() >= resize || !resize())) {
+            if ((pagesInUse < targetPages || liveCount == 0) && freeTop > 0) {
+                initiate();
+            } else {
+                terminate();
+            }
+        }
+        return true;
+    }
+
+    public void close() {
+    }
+
+    /**
+     * Makes an 'i' command for a new program.
+     */
+    private void initiate() {
+        int id = freeIds[--freeTop];
+        int newSize = drawSize();
+
+        bytes[id] = newSize;
+        pagesInUse += pages(newSize);
+        liveIndex[id] = liveCount;
+        live[liveCount++] = id;
+        push(tick + drawLifetime(), id);
+
+        opcode = 'i';
+        progID = id;
+        size = newSize;
+    }
+
+    /**
+     * Makes a 't' command for the program that ends first.
+     */
+    private void terminate() {
+        int id = pop();
+
+        pagesInUse -= pages(bytes[id]);
+        int last = live[--liveCount];
+        live[liveIndex[id]] = last;
+        liveIndex[last] = liveIndex[id];
+        freeIds[freeTop++] = id;
+
+        opcode = 't';
+        progID = id;
+        size = 0;
+    }
+
+    /**
+     * Makes a 'g' or 's' command for a popular running program.
+     *
+     * @return boolean, false when the program can neither grow nor shrink
+     */
+    private boolean resize() {
+        int id = live[zipfRank(liveCount) - 1];
+        int current = bytes[id];
+        int step = Math.max(1, maxSize / 4);
+
+        boolean grow = current < maxSize && (pagesInUse < targetPages || current == 0);
+        if (!grow && current == 0) {
+            return false;
+        }
+        int amount = grow
+                ? 1 + random.nextInt(Math.min(step, maxSize - current))
+                : 1 + random.nextInt(Math.min(step, current));
+        int newSize = grow ? current + amount : current - amount;
+
+        pagesInUse += pages(newSize) - pages(current);
+        bytes[id] = newSize;
+
+        opcode = grow ? 'g' : 's';
+        progID = id;
+        size = amount;
+        return true;
+    }
+
+    /**
+     * Makes an 'a' command for a byte of a popular running program, in one
+     * of its popular pages.
+     *
+     * @return boolean, false when the program has no bytes
+     */
+    private boolean access() {
+        int id = live[zipfRank(liveCount) - 1];
+        if (bytes[id] == 0) {
+            return false;
+        }
+        int page = zipfRank((int) pages(bytes[id])) - 1;
+        int first = page * pageSize;
+
+        opcode = 'a';
+        progID = id;
+        size = first + random.nextInt(Math.min(pageSize, bytes[id] - first));
+        return true;
+    }
+
+    private long pages(int numBytes) {
+        return (numBytes + (long) pageSize - 1) / pageSize;
+    }
+
+    // ****************************************************
+    // Distributions
+    // ****************************************************
+
+    /**
+     * Draws a program size between 1 and maxSize bytes.
+     *
+     * @return Integer
+     */
+    private int drawSize() {
+        if (maxSize == 0) {
+            return 0;
+        }
+        if (sizes.equals("uniform")) {
+            return 1 + random.nextInt(maxSize);
+        }
+        // Pareto with minimum 1, cut off above maxSize
+        double tail = Math.pow(maxSize + 1.0, -sizeAlpha);
+        double x = Math.pow(1 - random.nextDouble() * (1 - tail), -1 / sizeAlpha);
+        return (int) Math.min(maxSize, Math.max(1, (long) x));
+    }
+
+    /**
+     * Draws a lifetime in commands, at least 1.
+     *
+     * @return Long
+     */
+    private long drawLifetime() {
+        double u = 1 - random.nextDouble();   // in (0, 1]
+        double x;
+        if (lifetime.equals("exp")) {
+            x = -meanLife * Math.log(u);
+        } else {
+            double scale = alpha > 1 ? meanLife * (alpha - 1) / alpha : meanLife;
+            x = scale * Math.pow(u, -1 / alpha);
+        }
+        return Math.max(1, (long) Math.min(x, 1e18));
+    }
+
+    /**
+     * Draws a rank between 1 and n, rank k with probability proportional to
+     * 1 / k^zipf, by rejection-inversion (Hormann and Derflinger), which
+     * takes O(1) time whatever n is.
+     *
+     * @param n Integer
+     * @return Integer
+     */
+    private int zipfRank(int n) {
+        double hIntegralN = hIntegral(n + 0.5);
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= zipfS || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double h(double x) {
+        return Math.exp(-zipf * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - zipf) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - zipf);
+        if (t < -1) {
+            t = -1;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, also near 0
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, also near 0
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+
+    // ****************************************************
+    // Heap of program ends
+    // ****************************************************
+
+    private void push(long end, int id) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapEnd[parent] <= end) {
+                break;
+            }
+            heapEnd[i] = heapEnd[parent];
+            heapId[i] = heapId[parent];
+            i = parent;
+        }
+        heapEnd[i] = end;
+        heapId[i] = id;
+    }
+
+    private int pop() {
+        int top = heapId[0];
+        long end = heapEnd[--heapSize];
+        int id = heapId[heapSize];
+
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapEnd[child + 1] < heapEnd[child]) {
+                child++;
+            }
+            if (end <= heapEnd[child]) {
+                break;
+            }
+            heapEnd[i] = heapEnd[child];
+            heapId[i] = heapId[child];
+            i = child;
+        }
+        heapEnd[i] = end;
+        heapId[i] = id;
+        return top;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Properties options = new Properties();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                break;
+            }
+            options.setProperty(args[i].substring(1), args[i + 1]);
+        }
+
+        MemParam params;
+        WorkloadGenerator workload;
+        try {
+            String own[] = Arrays.copyOf(SETTINGS, SETTINGS.length + 2);
+            own[SETTINGS.length] = "out";
+            own[SETTINGS.length + 1] = "format";
+            params = MemParam.fromArgs(args, own);
+            workload = new WorkloadGenerator(params, options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        String out = options.getProperty("out");
+        if (out == null) {
+            MemSim sim = new MemSim(params);
+            try {
+                sim.run(workload);
+            } finally {
+                sim.getOutput().flush();
+            }
+        } else if (options.getProperty("format", "text").equals("binary")) {
+            try (CommandSink sink = new BinaryTraceWriter(Paths.get(out), params)) {
+                TraceConverter.copy(workload, sink);
+            }
+        } else {
+            try (CommandSink sink = new TextTraceWriter(
+                    new BufferedOutputStream(new FileOutputStream(out)))) {
+                TraceConverter.copy(workload, sink);
+            }
+        }
+    }
+}
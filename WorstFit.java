@@ -0,0 +1,10 @@
+/**
+ * Worst-fit: pages always come from the largest free extent, leaving the
+ * biggest possible remainder behind.
+ */
+public class WorstFit implements AllocPolicy {
+
+    public int choose(FreePageIndex freePages, int numPages) {
+        return freePages.largest();
+    }
+}